@@ -0,0 +1,124 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+/**
+ * The application classes live in the default package, which cannot be
+ * imported and which JMH does not accept for benchmark classes. The
+ * benchmarks therefore reach them through method handles resolved once
+ * during setup, so the lookup cost stays out of the measurement
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+final class AppClasses {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private AppClasses(){}
+
+    /**
+     * @param name of an application class
+     * @return the class
+     */
+    static Class<?> type(String name){
+        try{
+            return Class.forName(name);
+        }
+        catch (ClassNotFoundException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param className of an application class
+     * @param parameterTypes of the constructor
+     * @return handle of the public constructor
+     */
+    static MethodHandle constructor(String className, Class<?>... parameterTypes){
+        try{
+            return LOOKUP.findConstructor(type(className), MethodType.methodType(void.class, parameterTypes));
+        }
+        catch (ReflectiveOperationException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param className of an application class
+     * @param name of the public instance method
+     * @param returnType of the method
+     * @param parameterTypes of the method
+     * @return handle of the method, taking the receiver as its first argument
+     */
+    static MethodHandle method(String className, String name, Class<?> returnType, Class<?>... parameterTypes){
+        try{
+            return LOOKUP.findVirtual(type(className), name, MethodType.methodType(returnType, parameterTypes));
+        }
+        catch (ReflectiveOperationException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param className of an application class
+     * @param name of the public static method
+     * @param returnType of the method
+     * @param parameterTypes of the method
+     * @return handle of the static method
+     */
+    static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... parameterTypes){
+        try{
+            return LOOKUP.findStatic(type(className), name, MethodType.methodType(returnType, parameterTypes));
+        }
+        catch (ReflectiveOperationException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Implement an application interface with a handler for all of its methods
+     *
+     * @param interfaceName of the application interface
+     * @param handler invoked with the method arguments
+     * @return proxy implementing the interface
+     */
+    static Object implement(String interfaceName, Consumer<Object[]> handler){
+        Class<?> type = type(interfaceName);
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if(method.getDeclaringClass() == Object.class){
+                return method.invoke(handler, args);
+            }
+            handler.accept(args);
+            return null;
+        });
+    }
+
+    /**
+     * Read a fixture page bundled with the benchmarks
+     *
+     * @param name of the fixture file
+     * @return content of the fixture
+     */
+    static String fixture(String name){
+        try (InputStream inputStream = AppClasses.class.getResourceAsStream("/fixtures/" + name)) {
+            if(inputStream == null){
+                throw new IOException("Missing fixture " + name);
+            }
+            Scanner scanner = new Scanner(inputStream, StandardCharsets.UTF_8.name()).useDelimiter("\\A");
+            return scanner.hasNext() ? scanner.next() : "";
+        }
+        catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks DataManager.addFingerprintIfNotExcluded, the lookup
+ * CheckerThread makes for every keyword occurrence, against fingerprint sets
+ * of growing size, for windows that were already seen and for new ones
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintBenchmark {
+
+    private static final int WINDOWS = 4096;
+    private static final int UNSEEN_BATCH = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int setSize;
+
+    private Object dataManager;
+    private MethodHandle newDataManager;
+    private MethodHandle addFingerprintIfNotExcluded;
+    private Object settings;
+    private long[] seenFingerprints;
+    private int next;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        settings = AppClasses.constructor("Settings").invoke();
+        newDataManager = AppClasses.constructor("DataManager", AppClasses.type("Settings"));
+        addFingerprintIfNotExcluded = AppClasses.method("DataManager", "addFingerprintIfNotExcluded", boolean.class, long.class);
+        MethodHandle fingerprint = AppClasses.staticMethod("FingerprintSet", "fingerprint", long.class, CharSequence.class);
+        seenFingerprints = new long[WINDOWS];
+        for (int i = 0; i < Math.min(setSize, WINDOWS); i++) {
+            seenFingerprints[i] = (long) fingerprint.invoke((CharSequence) window("seen", i));
+        }
+        for (int i = setSize; i < WINDOWS; i++) {
+            seenFingerprints[i] = seenFingerprints[i % setSize];
+        }
+    }
+
+    /**
+     * Fill a new set with setSize fingerprints, so that the insertions of
+     * the previous iteration do not grow the set past its size
+     */
+    @Setup(Level.Iteration)
+    public void fill() throws Throwable {
+        dataManager = newDataManager.invoke(settings);
+        for (int i = 0; i < setSize; i++) {
+            addFingerprintIfNotExcluded.invoke(dataManager, i < WINDOWS ? seenFingerprints[i] : mix(-1 - i));
+        }
+        next = 0;
+    }
+
+    /**
+     * A window that was already hashed, the common case on a quiet page
+     */
+    @Benchmark
+    public boolean seen() throws Throwable {
+        next = (next + 1) & (WINDOWS - 1);
+        return (boolean) addFingerprintIfNotExcluded.invoke(dataManager, seenFingerprints[next]);
+    }
+
+    /**
+     * A window that has not been hashed yet, the set grows. Every call
+     * inserts a distinct fingerprint, and each iteration is a single batch
+     * of UNSEEN_BATCH calls on a freshly filled set, so the score in
+     * microseconds per batch reads as nanoseconds per insertion
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 10, batchSize = UNSEEN_BATCH)
+    @Measurement(iterations = 50, batchSize = UNSEEN_BATCH)
+    public boolean unseen() throws Throwable {
+        return (boolean) addFingerprintIfNotExcluded.invoke(dataManager, mix(++counter));
+    }
+
+    /**
+     * Spread a counter over 64 bits with the SplitMix64 finalizer, a
+     * bijection, so distinct counters give distinct fingerprints
+     *
+     * @param value to mix
+     * @return fingerprint, never 0
+     */
+    private static long mix(long value){
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        value ^= value >>> 31;
+        return value == 0 ? 1 : value; //0 marks an empty slot of the set
+    }
+
+    /**
+     * Build a 100 character window like the ones CheckerThread hashes
+     *
+     * @param prefix to make the window unique
+     * @param i index of the window
+     * @return window text
+     */
+    private static String window(String prefix, int i){
+        StringBuilder builder = new StringBuilder(100);
+        builder.append("price drop ").append(prefix).append(' ').append(i).append(" refurbished acme laptop ");
+        while(builder.length() < 100){
+            builder.append("listed by seller ");
+        }
+        builder.setLength(100);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks generating and loading the save data of large watchlists, starting
+ * from a save file in the old text format or in the binary one
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveBenchmark {
+
+    @Param({"1000", "50000"})
+    public int urlCount;
+
+    @Param({"5"})
+    public int keywordsPerUrl;
+
+    @Param({"10000"})
+    public int logCount;
+
+    @Param({"text", "binary"})
+    public String format;
+
+    private Path saveFile;
+    private Object dataManager;
+    private Object saveManager;
+    private MethodHandle getSaveData;
+    private MethodHandle loadKeyMap;
+    private MethodHandle loadLogs;
+    private MethodHandle load;
+    private MethodHandle addLogEntry;
+    private MethodHandle save;
+
+    @Setup
+    public void setup() throws Throwable {
+        saveFile = Files.createTempFile("urlspy-bench", ".txt");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(saveFile, StandardCharsets.UTF_8))) {
+            writer.print("---URL Spy Save File---\n<URLs + keywords>\n");
+            for (int i = 0; i < urlCount; i++) {
+                writer.print("https://shop" + (i % 97) + ".example.com/listing/" + i + "/|");
+                for (int k = 0; k < keywordsPerUrl; k++) {
+                    writer.print((k == 0 ? "" : ",") + "keyword " + k);
+                }
+                writer.print("\n");
+            }
+            writer.print("</URLs + keywords>\n<Logs>\n");
+            for (int i = 0; i < logCount; i++) {
+                writer.print("~https://shop" + (i % 97) + ".example.com/listing/" + i + "/ on \"keyword 1\" at 12:00:00/01.06\n");
+            }
+            writer.print("</Logs>\n");
+        }
+        Object settings = AppClasses.constructor("Settings").invoke();
+        dataManager = AppClasses.constructor("DataManager", AppClasses.type("Settings")).invoke(settings);
+        saveManager = AppClasses.method("DataManager", "getSaveManager", AppClasses.type("SaveManager")).invoke(dataManager);
+        AppClasses.method("SaveManager", "setPathToSave", void.class, Path.class).invoke(saveManager, saveFile);
+        AppClasses.method("DataManager", "load", void.class).invoke(dataManager);
+        getSaveData = AppClasses.method("SaveManager", "getSaveData", byte[].class);
+        loadKeyMap = AppClasses.method("SaveManager", "loadKeyMap", HashMap.class);
+        loadLogs = AppClasses.method("SaveManager", "loadLogs", ArrayList.class);
+        load = AppClasses.method("DataManager", "load", void.class);
+        addLogEntry = AppClasses.method("DataManager", "addLogEntry", void.class, String.class);
+        save = AppClasses.method("DataManager", "save", void.class);
+        if(format.equals("binary")){
+            Files.write(saveFile, (byte[]) getSaveData.invoke(saveManager));
+            load.invoke(dataManager);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(saveFile);
+        Files.deleteIfExists(saveFile.resolveSibling(saveFile.getFileName() + ".fingerprints"));
+        Files.deleteIfExists(saveFile.resolveSibling(saveFile.getFileName() + ".journal"));
+    }
+
+    @Benchmark
+    public Object getSaveData() throws Throwable {
+        return getSaveData.invoke(saveManager);
+    }
+
+    @Benchmark
+    public Object loadKeyMap() throws Throwable {
+        return loadKeyMap.invoke(saveManager);
+    }
+
+    @Benchmark
+    public Object loadLogs() throws Throwable {
+        return loadLogs.invoke(saveManager);
+    }
+
+    @Benchmark
+    public void load() throws Throwable {
+        load.invoke(dataManager);
+    }
+
+    /**
+     * Save after a single change, which only appends to the journal
+     * between compactions
+     */
+    @Benchmark
+    public void saveChange() throws Throwable {
+        addLogEntry.invoke(dataManager, "https://shop1.example.com/listing/1/ on \"keyword 1\" at 12:00:00/01.06");
+        save.invoke(dataManager);
+    }
+}
@@ -0,0 +1,133 @@
+package benchmarks;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the work CheckerThread.search does on a downloaded page:
+ * text extraction (full DOM or streaming) and single-pass keyword matching,
+ * with plain keywords or with regex and wildcard patterns
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final List<String> KEYWORDS = Arrays.asList(
+            "price drop", "sold out", "refurbished", "wireless", "camera", "laptop", "vintage", "acme",
+            "traffic", "council", "consultation", "seasonal", "guitar", "bicycle", "premium", "stark",
+            "headphones", "lens", "tablet", "watch");
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "price drop*", "re:\\bsold out\\b", "re:refurbish(ed|ment)", "wire*", "re:\\d+ ?(mp|megapixel)",
+            "re:lap(top|tops)\\b", "vint*", "re:acme|stark", "traffic *", "re:counc(il|ils)",
+            "re:consult\\w*", "season*", "re:guitars?", "re:bi(ke|cycle)", "re:premium\\b",
+            "re:\\$\\d+", "re:head(phones|set)", "re:\\blens", "re:tablets?", "re:watch(es)?");
+
+    @Param({"listing.html", "article.html"})
+    public String page;
+
+    @Param({"1", "5", "20"})
+    public int keywordCount;
+
+    @Param({"literal", "pattern"})
+    public String keywordKind;
+
+    private String html;
+    private String text;
+    private Object matcher;
+    private Object handler;
+    private MethodHandle newMatcher;
+    private MethodHandle newScanner;
+    private MethodHandle feed;
+    private MethodHandle feedHtml;
+    private MethodHandle finish;
+
+    @Setup
+    public void setup() throws Throwable {
+        html = AppClasses.fixture(page);
+        text = Jsoup.parse(html).body().text();
+        Class<?> matcherType = AppClasses.type("KeywordMatcher");
+        Class<?> handlerType = AppClasses.type("MatchScanner$OccurrenceHandler");
+        newMatcher = AppClasses.constructor("KeywordMatcher", List.class);
+        matcher = newMatcher.invoke(keywords());
+        newScanner = AppClasses.constructor("MatchScanner", matcherType, handlerType);
+        feed = AppClasses.method("MatchScanner", "feed", void.class, CharSequence.class);
+        feedHtml = AppClasses.method("MatchScanner", "feedHtml", void.class, Reader.class);
+        finish = AppClasses.method("MatchScanner", "finish", void.class);
+        handler = AppClasses.implement("MatchScanner$OccurrenceHandler", args -> {});
+    }
+
+    /**
+     * Matching only, on text that was already extracted
+     */
+    @Benchmark
+    public void matchText(Blackhole blackhole) throws Throwable {
+        Object scanner = newScanner.invoke(matcher, handler);
+        feed.invoke(scanner, text);
+        finish.invoke(scanner);
+        blackhole.consume(scanner);
+    }
+
+    /**
+     * Full DOM parse and body().text() extraction followed by matching
+     */
+    @Benchmark
+    public void domSearch(Blackhole blackhole) throws Throwable {
+        String body = Jsoup.parse(html).body().text();
+        Object scanner = newScanner.invoke(matcher, handler);
+        feed.invoke(scanner, body);
+        finish.invoke(scanner);
+        blackhole.consume(scanner);
+    }
+
+    /**
+     * Streaming extraction that feeds the matcher without building a DOM
+     */
+    @Benchmark
+    public void streamingSearch(Blackhole blackhole) throws Throwable {
+        Object scanner = newScanner.invoke(matcher, handler);
+        feedHtml.invoke(scanner, new StringReader(html));
+        finish.invoke(scanner);
+        blackhole.consume(scanner);
+    }
+
+    /**
+     * Matcher construction, paid whenever the keyword list changes
+     */
+    @Benchmark
+    public Object buildMatcher() throws Throwable {
+        return newMatcher.invoke(keywords());
+    }
+
+    /**
+     * @return plain keywords or regex and wildcard patterns, depending on the parameters
+     */
+    private List<String> keywords(){
+        return (keywordKind.equals("pattern") ? PATTERNS : KEYWORDS).subList(0, keywordCount);
+    }
+}
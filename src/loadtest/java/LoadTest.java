@@ -0,0 +1,166 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadTest runs the ThreadMonitor against a SiteFarm and reports the check
+ * throughput, the fetch latency and scheduler lag percentiles, the heap use
+ * and the number of threads of the monitor, every few seconds and at the
+ * end of the run. Nothing leaves the machine, so the results can be
+ * compared between versions to size deployments and catch scaling
+ * regressions
+ *
+ * Usage: gradle loadTest -PloadArgs="pages=5000 latency=100 concurrency=64"
+ *
+ * The farm is configured with pages, pageSize (bytes), hosts, latency
+ * (milliseconds), changes (per second), errors (fraction of requests) and
+ * validators (none, etag, lastmodified or both). The run lasts duration
+ * seconds and reports every report seconds, the console output of the
+ * monitor is hidden unless verbose is true. Any other key=value argument is
+ * passed to the monitor as a setting, for example interval or concurrency
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Properties arguments = new Properties();
+        for (String arg: args) {
+            int separator = arg.indexOf('=');
+            if(separator <= 0){
+                System.err.println("Arguments are key=value pairs, see the LoadTest class");
+                System.exit(1);
+            }
+            arguments.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        Settings harness = new Settings(arguments);
+        int pages = harness.getInt("pages", 2000);
+        long duration = harness.getLong("duration", 60);
+        long report = harness.getLong("report", 10);
+        SiteFarm farm = new SiteFarm(pages, harness.getInt("pageSize", 20000), harness.getInt("hosts", 64),
+                harness.getLong("latency", 50), getDouble(harness, "changes", 10), getDouble(harness, "errors", 0.01),
+                harness.get("validators", "etag"));
+        farm.start(harness.getInt("port", 0));
+
+        Properties monitorSettings = new Properties();
+        monitorSettings.setProperty("interval", "30");
+        monitorSettings.setProperty("concurrency", "32");
+        monitorSettings.putAll(arguments); //harness keys are ignored by the monitor
+        Settings settings = new Settings(monitorSettings);
+        SharedHttpClient.configureKeepAlive(settings); //before the first connection is opened
+        DataManager dataManager = new DataManager(settings);
+        dataManager.getSaveManager().clearPathToSave();
+        dataManager.load();
+        AtomicLong matches = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        dataManager.addSink(new MatchSink() {
+            @Override
+            public void matchFound(String url, String keyword) {
+                matches.incrementAndGet();
+            }
+
+            @Override
+            public void error(String message) {
+                errors.incrementAndGet();
+            }
+        });
+        for (String url: farm.getUrls()) {
+            dataManager.addUrl(url);
+            dataManager.addKeyword(url, SiteFarm.KEYWORD);
+        }
+
+        PrintStream console = System.out;
+        if(!harness.getBoolean("verbose", false)){
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {}
+
+                @Override
+                public void write(byte[] b, int off, int len) {}
+            }));
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        console.println("Checking " + pages + " pages for " + duration + " seconds");
+        long start = System.nanoTime();
+        ThreadMonitor threadMonitor = new ThreadMonitor(dataManager);
+        threadMonitor.startThreads();
+        MonitorMetrics monitorMetrics = threadMonitor.getMetrics();
+        CheckMetrics metrics = monitorMetrics.getAggregate();
+
+        long peakHeap = 0;
+        int peakThreads = 0;
+        long lastChecks = 0;
+        long lastReport = start;
+        long end = start + duration * 1_000_000_000L;
+        while(System.nanoTime() < end){
+            Thread.sleep(Math.min(1000, Math.max(1, (end - System.nanoTime()) / 1_000_000)));
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            peakThreads = Math.max(peakThreads, monitorThreads());
+            long now = System.nanoTime();
+            if(now - lastReport >= report * 1_000_000_000L || now >= end){
+                long checks = metrics.getChecks();
+                console.printf("%5ds  %8.1f checks/s  fetch p50 %7.1f ms  p99 %7.1f ms  lag p99 %7.1f ms  heap %5d MB  threads %4d%n",
+                        (now - start) / 1_000_000_000L, (checks - lastChecks) * 1e9 / (now - lastReport),
+                        metrics.getFetchLatencyP50Millis(), metrics.getFetchLatencyP99Millis(),
+                        monitorMetrics.getSchedulerLagP99Millis(),
+                        memory.getHeapMemoryUsage().getUsed() >> 20, monitorThreads());
+                lastChecks = checks;
+                lastReport = now;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        threadMonitor.shutdown();
+        dataManager.closeNotifications();
+        farm.stop();
+
+        console.println();
+        console.printf("Checks            %d (%.1f/s)%n", metrics.getChecks(), metrics.getChecks() / seconds);
+        console.printf("Requests served   %d, %d not modified, %d failed%n",
+                farm.getRequests(), farm.getNotModified(), farm.getFailed());
+        console.printf("Fetch latency     p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                metrics.getFetchLatencyP50Millis(), metrics.getFetchLatencyP99Millis(), metrics.getFetchLatencyMaxMillis());
+        console.printf("Scheduler lag     p50 %.1f ms, p99 %.1f ms, max %.1f ms%n", monitorMetrics.getSchedulerLagP50Millis(),
+                monitorMetrics.getSchedulerLagP99Millis(), monitorMetrics.getSchedulerLagMaxMillis());
+        console.printf("Parse / match p99 %.2f ms / %.2f ms%n",
+                metrics.getParseTimeP99Millis(), metrics.getMatchTimeP99Millis());
+        console.printf("Bytes downloaded  %d MB%n", metrics.getBytesDownloaded() >> 20);
+        console.printf("Page changes      %d, matches %d, errors %d%n", farm.getChanges(), matches.get(), errors.get());
+        console.printf("Heap              peak %d MB%n", peakHeap >> 20);
+        console.printf("Threads           peak %d, %d with the farm%n", peakThreads, threads.getPeakThreadCount());
+        System.exit(0);
+    }
+
+    /**
+     * @return number of live threads, not counting the threads of the farm
+     */
+    private static int monitorThreads(){
+        int count = 0;
+        for (Thread thread: Thread.getAllStackTraces().keySet()) {
+            if(!thread.getName().startsWith("farm-") && !thread.getName().startsWith("HTTP-Dispatcher")){ //dispatchers of the farm servers
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param settings to read the value from
+     * @param key of the setting
+     * @param defaultValue returned when the setting is not present or invalid
+     * @return value of the setting
+     */
+    private static double getDouble(Settings settings, String key, double defaultValue){
+        try{
+            return Double.parseDouble(settings.get(key, Double.toString(defaultValue)));
+        }
+        catch (NumberFormatException e){
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * SiteFarm is an embedded HTTP server that simulates a large number of
+ * websites for the load test. Every page has a version that is bumped at a
+ * configurable rate, and each version adds a new sentence with the keyword,
+ * so every change produces one match. Responses can be delayed, fail at a
+ * configurable rate and carry ETag and Last-Modified validators that are
+ * honoured with 304 responses
+ *
+ * The pages are spread over several servers on 127.0.0.1, one port per
+ * simulated host, which count as different hosts for the per-host
+ * connection cap of the SharedHttpClient
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class SiteFarm {
+
+    public static final String KEYWORD = "sale";
+
+    private static final String[] WORDS = {
+            "market", "update", "listing", "weather", "report", "council", "garden", "product",
+            "review", "delivery", "station", "museum", "history", "science", "travel", "recipe"};
+    private static final int FILLER_VARIANTS = 16;
+
+    private final int pages;
+    private final int hosts;
+    private final long latency;
+    private final double errorRate;
+    private final boolean etags;
+    private final boolean lastModified;
+    private final double changesPerSecond;
+    private final List<String> fillers;
+    private final AtomicIntegerArray versions;
+    private final AtomicLongArray changeTimes;
+    private final AtomicLong requests;
+    private final AtomicLong notModified;
+    private final AtomicLong failed;
+    private final AtomicLong changes;
+    private final ScheduledExecutorService changer;
+    private final List<HttpServer> servers;
+    private ExecutorService handlers;
+
+    /**
+     * Constructor for the SiteFarm class
+     *
+     * @param pages number of simulated pages
+     * @param pageSize approximate size of a page in bytes
+     * @param hosts number of servers to spread the pages over
+     * @param latency milliseconds to wait before each response
+     * @param changesPerSecond page changes per second over the whole farm
+     * @param errorRate fraction of the requests answered with an error
+     * @param validators "none", "etag", "lastmodified" or "both"
+     */
+    public SiteFarm(int pages, int pageSize, int hosts, long latency, double changesPerSecond,
+                    double errorRate, String validators){
+        this.pages = pages;
+        this.hosts = Math.max(1, hosts);
+        this.latency = latency;
+        this.changesPerSecond = changesPerSecond;
+        this.errorRate = errorRate;
+        etags = validators.equals("etag") || validators.equals("both");
+        lastModified = validators.equals("lastmodified") || validators.equals("both");
+        fillers = new ArrayList<>();
+        Random random = new Random(42); //the same pages on every run
+        for (int i = 0; i < FILLER_VARIANTS; i++) {
+            fillers.add(filler(random, pageSize));
+        }
+        versions = new AtomicIntegerArray(pages);
+        changeTimes = new AtomicLongArray(pages);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < pages; i++) {
+            changeTimes.set(i, now);
+        }
+        requests = new AtomicLong();
+        notModified = new AtomicLong();
+        failed = new AtomicLong();
+        changes = new AtomicLong();
+        servers = new ArrayList<>();
+        changer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "farm-changes");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param random source of the words
+     * @param size of the filler in bytes
+     * @return paragraphs of words without the keyword
+     */
+    private static String filler(Random random, int size){
+        StringBuilder builder = new StringBuilder(size + 64);
+        while(builder.length() < size){
+            builder.append("<p>");
+            for (int i = 0; i < 12; i++) {
+                builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            builder.append("</p>\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Start serving the pages and changing them
+     *
+     * @param port of the first host, the next hosts listen on the following
+     *             ports, 0 for any free ports
+     * @throws IOException if a port cannot be opened
+     */
+    public void start(int port) throws IOException {
+        handlers = Executors.newCachedThreadPool(runnable -> { //responses sleep for the latency
+            Thread thread = new Thread(runnable, "farm-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < hosts; i++) {
+            HttpServer server = HttpServer.create(
+                    new InetSocketAddress("127.0.0.1", port == 0 ? 0 : port + i), 1024);
+            server.setExecutor(handlers);
+            server.createContext("/page/", this::handle);
+            server.start();
+            servers.add(server);
+        }
+        if(changesPerSecond > 0){
+            long period = Math.max(1, (long) (1_000_000 / changesPerSecond));
+            changer.scheduleAtFixedRate(this::changeRandomPage, period, period, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Stop the server
+     */
+    public void stop(){
+        changer.shutdownNow();
+        for (HttpServer server: servers) {
+            server.stop(0);
+        }
+        if(handlers != null){
+            handlers.shutdownNow();
+        }
+    }
+
+    /**
+     * @return URLs of all of the pages
+     */
+    public List<String> getUrls(){
+        List<String> urls = new ArrayList<>(pages);
+        for (int i = 0; i < pages; i++) {
+            urls.add("http://127.0.0.1:" + servers.get(i % hosts).getAddress().getPort() + "/page/" + i);
+        }
+        return urls;
+    }
+
+    /**
+     * Bump the version of a random page
+     */
+    private void changeRandomPage(){
+        int page = ThreadLocalRandom.current().nextInt(pages);
+        versions.incrementAndGet(page);
+        changeTimes.set(page, System.currentTimeMillis());
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Answer a page request
+     *
+     * @param exchange of the request
+     * @throws IOException
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try{
+            requests.incrementAndGet();
+            if(latency > 0){
+                Thread.sleep(latency);
+            }
+            int page;
+            try{
+                page = Integer.parseInt(exchange.getRequestURI().getPath().substring("/page/".length()));
+            }
+            catch (NumberFormatException e){
+                page = -1;
+            }
+            if(page < 0 || page >= pages){
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if(errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate){
+                failed.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            int version = versions.get(page);
+            String etag = "\"" + page + "-" + version + "\"";
+            String modified = httpDate(changeTimes.get(page));
+            if(etags){
+                exchange.getResponseHeaders().set("ETag", etag);
+            }
+            if(lastModified){
+                exchange.getResponseHeaders().set("Last-Modified", modified);
+            }
+            if((etags && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+                    || (!etags && lastModified && modified.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since")))){
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = render(page, version).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param page index of the page
+     * @param version of the page
+     * @return HTML of the page, with one keyword sentence per version
+     */
+    private String render(int page, int version){
+        StringBuilder builder = new StringBuilder();
+        builder.append("<html><head><title>Page ").append(page).append("</title></head><body>\n<h1>Page ")
+                .append(page).append("</h1>\n");
+        for (int v = Math.max(1, version - 4); v <= version; v++) { //the latest few changes stay on the page
+            builder.append("<p>Offer ").append(page).append('.').append(v).append(" is on ").append(KEYWORD)
+                    .append(" today</p>\n");
+        }
+        builder.append(fillers.get(page % FILLER_VARIANTS));
+        builder.append("</body></html>\n");
+        return builder.toString();
+    }
+
+    /**
+     * @param millis since the epoch
+     * @return date in the format of the HTTP headers
+     */
+    private static String httpDate(long millis){
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    /**
+     * @return number of page requests served
+     */
+    public long getRequests(){ return requests.get(); }
+
+    /**
+     * @return number of 304 responses
+     */
+    public long getNotModified(){ return notModified.get(); }
+
+    /**
+     * @return number of requests answered with an error
+     */
+    public long getFailed(){ return failed.get(); }
+
+    /**
+     * @return number of page changes so far
+     */
+    public long getChanges(){ return changes.get(); }
+}
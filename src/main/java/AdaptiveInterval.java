@@ -0,0 +1,48 @@
+/**
+ * AdaptiveInterval adjusts the interval between the checks of a URL to how
+ * often its page changes. A change shortens the interval to catch the next
+ * one quickly, each check that finds the page unchanged lengthens it a
+ * little, always within the configured bounds
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class AdaptiveInterval {
+
+    private static final double SPEED_UP = 0.5;
+    private static final double SLOW_DOWN = 1.25;
+
+    private final long minInterval;
+    private final long maxInterval;
+
+    /**
+     * Constructor for the AdaptiveInterval class
+     *
+     * @param minInterval shortest interval in milliseconds
+     * @param maxInterval longest interval in milliseconds
+     */
+    public AdaptiveInterval(long minInterval, long maxInterval){
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+    }
+
+    /**
+     * Compute the interval to use after a check
+     *
+     * @param interval used before the check in milliseconds
+     * @param changed true if the check found the page changed
+     * @return interval to use for the next check in milliseconds
+     */
+    public long next(long interval, boolean changed){
+        double next = interval * (changed ? SPEED_UP : SLOW_DOWN);
+        return Math.max(minInterval, Math.min(maxInterval, (long) next));
+    }
+
+    /**
+     * @param interval in milliseconds
+     * @return the interval limited to the bounds
+     */
+    public long clamp(long interval){
+        return Math.max(minInterval, Math.min(maxInterval, interval));
+    }
+}
@@ -0,0 +1,81 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream wrapper that enforces the budget of a check: reading fails
+ * with a CheckAbortedException once more than the allowed number of bytes
+ * has been read or the deadline has passed
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class BudgetInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private final long deadline;
+    private long count;
+
+    /**
+     * Constructor for the BudgetInputStream class
+     *
+     * @param in stream to limit
+     * @param maxBytes number of bytes that may be read
+     * @param deadline System.nanoTime after which reading fails
+     */
+    public BudgetInputStream(InputStream in, long maxBytes, long deadline){
+        super(in);
+        this.maxBytes = maxBytes;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkTime();
+        int b = super.read();
+        if(b != -1){
+            consume(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkTime();
+        long allowed = maxBytes - count;
+        int n = super.read(b, off, allowed < len ? (int) allowed + 1 : len); //one byte past the budget is enough to detect it
+        if(n > 0){
+            consume(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkTime();
+        long allowed = maxBytes - count;
+        long skipped = super.skip(allowed < n ? allowed + 1 : n);
+        consume(skipped);
+        return skipped;
+    }
+
+    /**
+     * @param n number of bytes that were read
+     * @throws CheckAbortedException if the size budget is exceeded
+     */
+    private void consume(long n) throws CheckAbortedException {
+        count += n;
+        if(count > maxBytes){
+            throw new CheckAbortedException("the page is larger than " + maxBytes + " bytes");
+        }
+    }
+
+    /**
+     * @throws CheckAbortedException if the deadline has passed
+     */
+    private void checkTime() throws CheckAbortedException {
+        if(System.nanoTime() - deadline > 0){
+            throw new CheckAbortedException("the check took longer than its time budget");
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import java.io.IOException;
+
+/**
+ * Thrown when a check is aborted because the page exceeded the size or
+ * time budget of its URL
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class CheckAbortedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor for the CheckAbortedException class
+     *
+     * @param reason the check was aborted for
+     */
+    public CheckAbortedException(String reason){
+        super(reason);
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CheckMetrics collects the counters and histograms of the checks of one
+ * URL, or of all of the URLs when used as the aggregate
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class CheckMetrics implements CheckMetricsMBean {
+
+    private final CheckMetrics aggregate;
+    private final AtomicLong checks;
+    private final AtomicLong notModified;
+    private final AtomicLong unchanged;
+    private final AtomicLong errors;
+    private final AtomicLong aborted;
+    private final AtomicLong matches;
+    private final AtomicLong bytesDownloaded;
+    private final Histogram fetchLatency;
+    private final Histogram parseTime;
+    private final Histogram matchTime;
+    private final Histogram pageSize;
+    private volatile long lastSuccess;
+    private volatile String lastError;
+
+    /**
+     * Constructor for the CheckMetrics class
+     *
+     * @param aggregate metrics that every recorded value is added to as well, or null
+     */
+    public CheckMetrics(CheckMetrics aggregate){
+        this.aggregate = aggregate;
+        checks = new AtomicLong();
+        notModified = new AtomicLong();
+        unchanged = new AtomicLong();
+        errors = new AtomicLong();
+        aborted = new AtomicLong();
+        matches = new AtomicLong();
+        bytesDownloaded = new AtomicLong();
+        fetchLatency = new Histogram();
+        parseTime = new Histogram();
+        matchTime = new Histogram();
+        pageSize = new Histogram();
+    }
+
+    /**
+     * Record a completed fetch
+     *
+     * @param latencyNanos time until the response headers arrived
+     * @param bytes size of the downloaded body
+     */
+    public void recordFetch(long latencyNanos, long bytes){
+        checks.incrementAndGet();
+        fetchLatency.record(latencyNanos / 1000);
+        bytesDownloaded.addAndGet(bytes);
+        pageSize.record(bytes);
+        if(aggregate != null){
+            aggregate.recordFetch(latencyNanos, bytes);
+        }
+    }
+
+    /**
+     * Record a fetch answered with 304 Not Modified
+     *
+     * @param latencyNanos time until the response headers arrived
+     */
+    public void recordNotModified(long latencyNanos){
+        checks.incrementAndGet();
+        notModified.incrementAndGet();
+        fetchLatency.record(latencyNanos / 1000);
+        if(aggregate != null){
+            aggregate.recordNotModified(latencyNanos);
+        }
+    }
+
+    /**
+     * Record a page whose text did not change since the last check
+     */
+    public void recordUnchanged(){
+        unchanged.incrementAndGet();
+        if(aggregate != null){
+            aggregate.recordUnchanged();
+        }
+    }
+
+    /**
+     * Record the time spent turning the response into text
+     *
+     * @param nanos elapsed time
+     */
+    public void recordParse(long nanos){
+        parseTime.record(nanos / 1000);
+        if(aggregate != null){
+            aggregate.recordParse(nanos);
+        }
+    }
+
+    /**
+     * Record the time spent matching the text and checking the fingerprints
+     *
+     * @param nanos elapsed time
+     */
+    public void recordMatch(long nanos){
+        matchTime.record(nanos / 1000);
+        if(aggregate != null){
+            aggregate.recordMatch(nanos);
+        }
+    }
+
+    /**
+     * Record a check that reported a new match
+     */
+    public void recordMatchFound(){
+        matches.incrementAndGet();
+        if(aggregate != null){
+            aggregate.recordMatchFound();
+        }
+    }
+
+    /**
+     * Record a check that completed without an error
+     */
+    public void recordSuccess(){
+        lastSuccess = System.currentTimeMillis();
+        if(aggregate != null){
+            aggregate.recordSuccess();
+        }
+    }
+
+    /**
+     * Record a failed check
+     *
+     * @param message describing the error
+     */
+    public void recordError(String message){
+        errors.incrementAndGet();
+        lastError = message;
+        if(aggregate != null){
+            aggregate.recordError(message);
+        }
+    }
+
+    /**
+     * Record a check that was aborted because it exceeded its budget
+     *
+     * @param reason the check was aborted for
+     */
+    public void recordAborted(String reason){
+        aborted.incrementAndGet();
+        lastError = reason;
+        if(aggregate != null){
+            aggregate.recordAborted(reason);
+        }
+    }
+
+    @Override
+    public long getChecks() { return checks.get(); }
+
+    @Override
+    public long getNotModified() { return notModified.get(); }
+
+    @Override
+    public long getUnchanged() { return unchanged.get(); }
+
+    @Override
+    public long getErrors() { return errors.get(); }
+
+    @Override
+    public long getAborted() { return aborted.get(); }
+
+    @Override
+    public long getMatches() { return matches.get(); }
+
+    @Override
+    public long getBytesDownloaded() { return bytesDownloaded.get(); }
+
+    @Override
+    public double getFetchLatencyMeanMillis() { return fetchLatency.getMean() / 1000; }
+
+    @Override
+    public double getFetchLatencyP50Millis() { return fetchLatency.percentile(0.5) / 1000.0; }
+
+    @Override
+    public double getFetchLatencyP99Millis() { return fetchLatency.percentile(0.99) / 1000.0; }
+
+    @Override
+    public double getFetchLatencyMaxMillis() { return fetchLatency.getMax() / 1000.0; }
+
+    @Override
+    public double getParseTimeP50Millis() { return parseTime.percentile(0.5) / 1000.0; }
+
+    @Override
+    public double getParseTimeP99Millis() { return parseTime.percentile(0.99) / 1000.0; }
+
+    @Override
+    public double getMatchTimeP50Millis() { return matchTime.percentile(0.5) / 1000.0; }
+
+    @Override
+    public double getMatchTimeP99Millis() { return matchTime.percentile(0.99) / 1000.0; }
+
+    @Override
+    public long getPageSizeP50Bytes() { return pageSize.percentile(0.5); }
+
+    @Override
+    public long getPageSizeMaxBytes() { return pageSize.getMax(); }
+
+    @Override
+    public long getSecondsSinceLastSuccess() {
+        long last = lastSuccess;
+        return last == 0 ? -1 : (System.currentTimeMillis() - last) / 1000;
+    }
+
+    @Override
+    public String getLastError() { return lastError; }
+
+    /**
+     * @return histogram of the fetch latencies in microseconds
+     */
+    public Histogram getFetchLatency(){ return fetchLatency; }
+}
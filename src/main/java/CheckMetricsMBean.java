@@ -0,0 +1,46 @@
+/**
+ * JMX interface of the CheckMetrics class, times are in milliseconds
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public interface CheckMetricsMBean {
+
+    long getChecks();
+
+    long getNotModified();
+
+    long getUnchanged();
+
+    long getErrors();
+
+    long getAborted();
+
+    long getMatches();
+
+    long getBytesDownloaded();
+
+    double getFetchLatencyMeanMillis();
+
+    double getFetchLatencyP50Millis();
+
+    double getFetchLatencyP99Millis();
+
+    double getFetchLatencyMaxMillis();
+
+    double getParseTimeP50Millis();
+
+    double getParseTimeP99Millis();
+
+    double getMatchTimeP50Millis();
+
+    double getMatchTimeP99Millis();
+
+    long getPageSizeP50Bytes();
+
+    long getPageSizeMaxBytes();
+
+    long getSecondsSinceLastSuccess();
+
+    String getLastError();
+}
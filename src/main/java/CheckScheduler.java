@@ -0,0 +1,302 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CheckScheduler runs the URL checks as tasks on a bounded pool of worker
+ * threads, or on virtual threads when the runtime supports them. Each URL
+ * has its own interval and is never checked by two workers at once
+ *
+ * The due times are kept in a TimingWheel, so the number of URLs does not
+ * slow down scheduling. Every interval is stretched or shortened by a random
+ * jitter, so checks that start together drift apart instead of firing in
+ * bursts. The lag between the due time of a check and its start is recorded
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class CheckScheduler {
+
+    private final TimingWheel timer;
+    private final ExecutorService workers;
+    private final Semaphore permits;
+    private final ConcurrentHashMap<String, ScheduledCheck> checks;
+    private final long defaultInterval;
+    private final double jitter;
+    private final Histogram lag;
+
+    /**
+     * Constructor for the CheckScheduler class
+     *
+     * @param concurrency maximum number of checks running at the same time
+     * @param defaultInterval time between two checks of a URL in milliseconds
+     * @param virtualThreads run the checks on virtual threads if available
+     * @param tick resolution of the due times in milliseconds
+     * @param jitter largest fraction of an interval added to or taken from it
+     */
+    public CheckScheduler(int concurrency, long defaultInterval, boolean virtualThreads, long tick, double jitter){
+        this.defaultInterval = defaultInterval;
+        this.jitter = Math.max(0, Math.min(jitter, 0.5));
+        checks = new ConcurrentHashMap<>();
+        lag = new Histogram();
+        timer = new TimingWheel(tick, "check-timer");
+        ExecutorService virtualExecutor = virtualThreads ? createVirtualExecutor() : null;
+        if(virtualExecutor != null){
+            workers = virtualExecutor;
+            permits = new Semaphore(concurrency);
+        }
+        else{
+            workers = Executors.newFixedThreadPool(concurrency, namedFactory("checker"));
+            permits = null;
+        }
+    }
+
+    /**
+     * Create a virtual thread per task executor. The application is compiled
+     * for Java 8, so the factory method is looked up reflectively
+     *
+     * @return executor or null if virtual threads are not supported
+     */
+    private static ExecutorService createVirtualExecutor(){
+        try{
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e){
+            System.out.println("Virtual threads are not supported, using a bounded pool");
+            return null;
+        }
+    }
+
+    /**
+     * Create a thread factory that gives the threads readable names
+     *
+     * @param prefix of the thread names
+     * @return thread factory
+     */
+    private static ThreadFactory namedFactory(String prefix){
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+    }
+
+    /**
+     * Schedule a periodic check of a URL, replacing any existing one
+     *
+     * @param url to check
+     * @param check task that performs a single check
+     * @param initialDelay delay before the first check in milliseconds
+     */
+    public void schedule(String url, Runnable check, long initialDelay){
+        ScheduledCheck scheduledCheck = new ScheduledCheck(check, defaultInterval);
+        ScheduledCheck previous = checks.put(url, scheduledCheck);
+        if(previous != null){
+            previous.cancel();
+        }
+        scheduledCheck.scheduleIn(initialDelay);
+    }
+
+    /**
+     * Stop checking a URL
+     *
+     * @param url to stop checking
+     */
+    public void cancel(String url){
+        ScheduledCheck scheduledCheck = checks.remove(url);
+        if(scheduledCheck != null){
+            scheduledCheck.cancel();
+        }
+    }
+
+    /**
+     * Check a URL as soon as possible
+     *
+     * @param url to check
+     */
+    public void trigger(String url){
+        ScheduledCheck scheduledCheck = checks.get(url);
+        if(scheduledCheck != null){
+            scheduledCheck.trigger();
+        }
+    }
+
+    /**
+     * Check all of the URLs as soon as possible
+     */
+    public void triggerAll(){
+        for (ScheduledCheck scheduledCheck: checks.values()) {
+            scheduledCheck.trigger();
+        }
+    }
+
+    /**
+     * Set the interval between the checks of a URL, takes effect
+     * after the next check
+     *
+     * @param url to update
+     * @param interval in milliseconds
+     */
+    public void setInterval(String url, long interval){
+        ScheduledCheck scheduledCheck = checks.get(url);
+        if(scheduledCheck != null){
+            scheduledCheck.interval = interval;
+        }
+    }
+
+    /**
+     * Get the interval between the checks of a URL
+     *
+     * @param url to look up
+     * @return interval in milliseconds
+     */
+    public long getInterval(String url){
+        ScheduledCheck scheduledCheck = checks.get(url);
+        return scheduledCheck == null ? defaultInterval : scheduledCheck.interval;
+    }
+
+    /**
+     * Get a delay within the default interval, used to spread the first
+     * checks of the URLs that are scheduled together
+     *
+     * @return random delay in milliseconds
+     */
+    public long spreadDelay(){
+        return ThreadLocalRandom.current().nextLong(Math.max(1, defaultInterval));
+    }
+
+    /**
+     * @param interval in milliseconds
+     * @return interval moved by a random jitter
+     */
+    long jittered(long interval){
+        long range = (long) (interval * jitter);
+        return range <= 0 ? interval : interval - range + ThreadLocalRandom.current().nextLong(2 * range + 1);
+    }
+
+    /**
+     * @return time between the due times of the checks and their start, in microseconds
+     */
+    public Histogram getLag(){ return lag; }
+
+    /**
+     * @return number of checks waiting for their due time
+     */
+    public int getWaiting(){ return timer.getPending(); }
+
+    /**
+     * Stop all of the checks and the worker threads
+     */
+    public void shutdown(){
+        for (ScheduledCheck scheduledCheck: checks.values()) {
+            scheduledCheck.cancel();
+        }
+        checks.clear();
+        timer.shutdown();
+        workers.shutdownNow();
+    }
+
+    /**
+     * A check of a single URL together with its scheduling state
+     */
+    private class ScheduledCheck implements Runnable {
+
+        private final Runnable check;
+        private volatile long interval;
+        private TimingWheel.Timeout pending;
+        private long due;
+        private boolean running;
+        private boolean rerunRequested;
+        private boolean cancelled;
+
+        private ScheduledCheck(Runnable check, long interval){
+            this.check = check;
+            this.interval = interval;
+        }
+
+        /**
+         * Replace the pending run with one after the given delay
+         *
+         * @param delay in milliseconds
+         */
+        synchronized private void scheduleIn(long delay){
+            if(cancelled){
+                return;
+            }
+            due = System.nanoTime() + delay * 1_000_000;
+            if(pending == null){
+                pending = timer.schedule(this::dispatch, delay);
+            }
+            else{
+                timer.reschedule(pending, delay);
+            }
+        }
+
+        /**
+         * Hand the check over to the workers unless it is already running
+         */
+        private void dispatch(){
+            synchronized (this){
+                if(cancelled || running){
+                    return;
+                }
+                running = true;
+            }
+            workers.execute(this);
+        }
+
+        /**
+         * Run the check now, or right after the current run finishes
+         */
+        synchronized private void trigger(){
+            if(running){
+                rerunRequested = true;
+            }
+            else{
+                scheduleIn(0);
+            }
+        }
+
+        synchronized private void cancel(){
+            cancelled = true;
+            if(pending != null){
+                timer.cancel(pending);
+            }
+        }
+
+        @Override
+        public void run() {
+            try{
+                if(permits != null){
+                    permits.acquire();
+                }
+                long start = System.nanoTime();
+                synchronized (this){
+                    lag.record((start - due) / 1000);
+                }
+                try{
+                    check.run();
+                }
+                finally {
+                    if(permits != null){
+                        permits.release();
+                    }
+                }
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            catch (RuntimeException e){
+                e.printStackTrace();
+            }
+            finally {
+                synchronized (this){
+                    running = false;
+                    scheduleIn(rerunRequested ? 0 : jittered(interval));
+                    rerunRequested = false;
+                }
+            }
+        }
+    }
+}
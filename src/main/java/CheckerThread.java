@@ -1,116 +1,364 @@
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
- * CheckerThread is a runnable object that checks a particular URL
- * for updates that include specified keywords
+ * CheckerThread is a runnable task that checks a particular resource
+ * for updates that include specified keywords. All of the URLs with the
+ * same canonical form share one CheckerThread, the page is fetched once
+ * per check and the matches are reported to every URL whose keywords
+ * they belong to. The check can be scoped to the elements matched by a
+ * CSS selector, in which case only their text is extracted and matched
  *
  * @version 0.4
  * @author Albert Shakirzianov
  */
 public class CheckerThread implements Runnable {
 
-    private final String url;
-    private final ArrayList<String> keywords;
+    private final String key;
+    private final String selector;
     private final ThreadMonitor threadMonitor;
-    private boolean hashingRequired;
-    private String lastMatch;
-    private boolean running;
+    private volatile FetchTarget target;
+    private final CheckMetrics metrics;
+    private final CopyOnWriteArrayList<String> urls;
+    private final Set<String> hashingUrls;
+    private final LinkedHashMap<String, String> lastMatches = new LinkedHashMap<>();
+    private Set<String> silentUrls;
+    private long lastDigest;
+    private boolean digestKnown;
+    private final Occurrences occurrences = new Occurrences();
+    private KeywordMatcher matcher;
+    private List<List<String>> keywordOwners;
+    private List<Long> matcherVersions;
 
     /**
      * Constructor for the CheckerThread class
      *
      * @param threadMonitor ThreadMonitor that created the object
-     * @param url of the website to monitor
-     * @param keywords list of keywords to check the updates against
+     * @param key canonical key shared by the URLs of the checker
+     * @param fetchUrl URL the page is fetched from
+     * @param selector CSS selector to scope the check to, or null to check the whole page
      */
-    public CheckerThread(ThreadMonitor threadMonitor, String url, ArrayList<String> keywords){
+    public CheckerThread(ThreadMonitor threadMonitor, String key, String fetchUrl, String selector){
         this.threadMonitor = threadMonitor;
-        this.url = url;
-        this.keywords = keywords;
-        hashingRequired = true;
+        this.key = key;
+        this.selector = selector;
+        target = new FetchTarget(fetchUrl, threadMonitor.newFetcher(fetchUrl));
+        metrics = threadMonitor.getMetrics().forCheck(key); //kept when the page is fetched from another URL
+        urls = new CopyOnWriteArrayList<>();
+        hashingUrls = ConcurrentHashMap.newKeySet();
     }
 
     /**
-     * Start method for the thread object
+     * Run a single check of the resource, invoked by the CheckScheduler
      */
     @Override
     public void run() {
-        running = true;
-        while(running){
-            try{
-                if (hashingRequired){ //run the search method and hash the matches without creating a success notification
-                    search();
-                    System.out.println("Hashing complete");
-                    hashingRequired = false;
+        FetchTarget target = this.target; //the URL the page is fetched from can be removed during the check
+        try{
+            Set<String> hashing = new HashSet<>(hashingUrls);
+            boolean compared = digestKnown && hashing.isEmpty(); //the first check of a page has nothing to compare against
+            long previousDigest = lastDigest;
+            boolean found = search(hashing, target.fetcher, metrics); //the matches of the hashed URLs are stored without creating a success notification
+            hashingUrls.removeAll(hashing);
+            if(!hashing.isEmpty()){
+                System.out.println("Hashing complete");
+            }
+            metrics.recordSuccess();
+            if(compared){
+                threadMonitor.pageChecked(key, lastDigest != previousDigest);
+            }
+            if(found){
+                metrics.recordMatchFound();
+                for (Map.Entry<String, String> match: lastMatches.entrySet()) {
+                    threadMonitor.matchFound(match.getKey(), match.getValue());
                 }
-                boolean found = search();
-                if(found){
-                    threadMonitor.matchFound(url, lastMatch);}
             }
-            catch (IOException e){
+        }
+        catch (CheckAbortedException e){
+            metrics.recordAborted(e.getMessage());
+            threadMonitor.error("Check of " + target.url + " aborted: " + e.getMessage());
+        }
+        catch (IOException e){
+            metrics.recordError(e.toString());
+            for (String url: urls) {
                 threadMonitor.error("Could not access " + url);
             }
+        }
+        threadMonitor.flushFingerprints();
+    }
 
-            try{
-                System.out.println(Thread.currentThread().toString() +  " is sleeping...");
-                Thread.sleep(30000);
+    /**
+     * Search the page for matches against the keywords of all of the URLs. The page
+     * is fetched once and all of the keywords are matched in a single pass,
+     * nothing is matched if the page has not been modified since the last check
+     * or if its text has the same digest as in the last check.
+     * In streaming mode the text is matched as it is downloaded, without
+     * building a document, unless the check is scoped to a CSS selector.
+     * The digest is then known only after the scan, so an unchanged page
+     * is still scanned and only the reporting of its matches is skipped,
+     * streaming saves memory, not matching work
+     *
+     * @param hashing URLs whose current matches are stored without being reported
+     * @param fetcher to fetch the page with
+     * @param metrics to record the check in
+     * @return true if a match was found
+     * @throws IOException
+     */
+    synchronized private boolean search(Set<String> hashing, PageFetcher fetcher, CheckMetrics metrics) throws IOException{
+        lastMatches.clear();
+        silentUrls = hashing;
+        if(!hashing.isEmpty()){
+            fetcher.reset(); //the hashed URLs have to see the full page
+            digestKnown = false;
+        }
+        if(updateMatcher(fetcher)){
+            occurrences.clear();
+            MatchScanner scanner = new MatchScanner(matcher, occurrences::add);
+            long start = System.nanoTime();
+            long digest;
+            String text = null;
+            if(threadMonitor.isStreaming() && selector == null){
+                boolean modified = fetcher.fetchText(scanner);
+                if(!modified){
+                    metrics.recordNotModified(fetcher.getLastLatency());
+                    return false;
+                }
+                scanner.finish();
+                recordFetch(start, fetcher, metrics);
+                digest = scanner.getDigest(); //known only once the whole text went through the scanner, so the scan is not skipped
+            }
+            else{
+                Document doc = fetcher.fetch();
+                if(doc == null){
+                    metrics.recordNotModified(fetcher.getLastLatency());
+                    return false;
+                }
+                try{
+                    text = selector == null ? doc.body().text() : doc.select(selector).text(); //only the selected subtrees
+                }
+                catch (Selector.SelectorParseException e){
+                    throw new IOException("Invalid CSS selector " + selector, e);
+                }
+                recordFetch(start, fetcher, metrics);
+                digest = FingerprintSet.fingerprint(text);
+            }
+            if(digestKnown && digest == lastDigest){
+                metrics.recordUnchanged();
+                return false;
+            }
+            if(text != null){ //the text of a document is scanned only once it is known to have changed
+                scanner.feed(text);
+                scanner.finish();
             }
-            catch (InterruptedException e){
-                System.out.println(Thread.currentThread().toString() + " is awoken");
+            lastDigest = digest;
+            digestKnown = true;
+            long matchStart = System.nanoTime();
+            for (int i = 0; i < occurrences.size(); i++) {
+                occurrence(occurrences.keywordIndex(i), occurrences.index(i), occurrences.fingerprint(i));
             }
+            metrics.recordMatch(System.nanoTime() - matchStart);
         }
+        return !lastMatches.isEmpty();
     }
 
     /**
-     * Search the url page for matches against the list of keywords
+     * Build the automaton from the keywords of all of the URLs, only when
+     * one of the URLs has published new keywords or the URLs have changed
      *
-     * @return true if a match was found
-     * @throws IOException
+     * @param fetcher whose validators are reset when the keywords change
+     * @return false if none of the URLs has any keywords
      */
-    synchronized private boolean search() throws IOException{
-        boolean found = false;
-        if(!keywords.isEmpty()){
-            for (String word : keywords) { //search every listed website for every listed word
-                Document doc = Jsoup.connect(url).get();
-                String body = doc.body().text().toLowerCase();
-                if (body.contains(word)) { //check if the document contains the currently checked keyword
-                    int pageIndex = 0; //index counter
-                    while (pageIndex < body.lastIndexOf(word)) { //check indexes from 0 to last character of the last found word occurrence
-                        int matchInd = body.indexOf(word, pageIndex); //index of the first letter of the matched word
-                        String hashStr;
-                        if (matchInd + 100 < body.length()) {
-                            hashStr = body.substring(matchInd, matchInd + 100); //make a substring of 100 characters starting with the matched word
-                        } else {
-                            hashStr = body.substring(matchInd, body.length() - 1);
-                        }
-                        pageIndex = matchInd + word.length(); //set the index to the last char of the matched word
-                        boolean isExcluded = threadMonitor.addHashIfNotExcluded(hashStr);
-                        if (!isExcluded) {
-                            System.out.println(url + " " + word + " " + matchInd);
-                            lastMatch = word;
-                            found = true;
-                        }
+    private boolean updateMatcher(PageFetcher fetcher){
+        List<KeywordSnapshot> snapshots = new ArrayList<>();
+        List<Long> versions = new ArrayList<>();
+        for (String url: urls) {
+            KeywordSnapshot keywords = threadMonitor.getKeywords(url); //consistent for the whole check, edits publish a new snapshot
+            snapshots.add(keywords);
+            versions.add(keywords == null ? -1 : keywords.getVersion());
+        }
+        if(matcher == null || !versions.equals(matcherVersions)){
+            LinkedHashMap<String, List<String>> owners = new LinkedHashMap<>(); //keyword to the URLs that watch it
+            for (int i = 0; i < snapshots.size(); i++) {
+                if(snapshots.get(i) != null){
+                    for (String keyword: snapshots.get(i).getKeywords()) {
+                        owners.computeIfAbsent(keyword, k -> new ArrayList<>()).add(urls.get(i));
                     }
                 }
             }
+            matcher = new KeywordMatcher(new ArrayList<>(owners.keySet()));
+            if(matcher.getPatterns() != null){
+                for (String error: matcher.getPatterns().getErrors()) { //the other keywords are still checked
+                    threadMonitor.error(error);
+                }
+            }
+            keywordOwners = new ArrayList<>(owners.values());
+            matcherVersions = versions;
+            fetcher.reset(); //the new keywords have to be matched against the full page
+            digestKnown = false;
+        }
+        return matcher.size() > 0;
+    }
+
+    /**
+     * Record the fetch of a modified page and the time spent turning it into text
+     *
+     * @param start time the fetch started at, from System.nanoTime
+     * @param fetcher that fetched the page
+     * @param metrics to record the fetch in
+     */
+    private void recordFetch(long start, PageFetcher fetcher, CheckMetrics metrics){
+        long latency = fetcher.getLastLatency();
+        metrics.recordFetch(latency, fetcher.getLastBytes());
+        metrics.recordParse(System.nanoTime() - start - latency);
+    }
+
+    /**
+     * Check a keyword occurrence found by the scanner against the stored
+     * fingerprints and record a match for every URL watching the keyword
+     * if it has not been seen before
+     *
+     * @param keywordIndex index of the matched keyword
+     * @param matchInd index of the first letter of the matched word
+     * @param fingerprint of the window of text starting with the matched word
+     */
+    private void occurrence(int keywordIndex, int matchInd, long fingerprint){
+        boolean isExcluded = threadMonitor.addFingerprintIfNotExcluded(fingerprint);
+        if (!isExcluded) {
+            String word = matcher.getKeyword(keywordIndex);
+            for (String url: keywordOwners.get(keywordIndex)) {
+                if(!silentUrls.contains(url)){
+                    System.out.println(url + " " + word + " " + matchInd);
+                    lastMatches.put(url, word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start reporting the matches of a URL
+     *
+     * @param url with the canonical key of the checker
+     * @param hashingRequired hash the current matches before reporting new ones
+     */
+    public void addUrl(String url, boolean hashingRequired){
+        if(hashingRequired){
+            hashingUrls.add(url);
         }
-        return found;
+        urls.addIfAbsent(url);
     }
 
     /**
-     * Force the checker to run hashing again
+     * Stop reporting the matches of a URL. If the page was fetched from the
+     * removed URL, it is fetched from one of the remaining URLs from now on
+     *
+     * @param url to remove
      */
-    public void requestHashing(){
-        hashingRequired = true;
+    public void removeUrl(String url){
+        urls.remove(url);
+        hashingUrls.remove(url);
+        if(url.equals(target.url) && !urls.isEmpty()){
+            String fetchUrl = urls.get(0);
+            target = new FetchTarget(fetchUrl, threadMonitor.newFetcher(fetchUrl));
+        }
     }
 
     /**
-     * Stop the thread
+     * @return true if no URL is left to check
      */
-    public void stopRunning(){ running = false; }
+    public boolean isEmpty(){ return urls.isEmpty(); }
 
+    /**
+     * @return URLs whose matches are reported by the checker
+     */
+    public List<String> getUrls(){ return urls; }
+
+    /**
+     * @return URL the page is fetched from
+     */
+    public String getFetchUrl(){ return target.url; }
+
+    /**
+     * Force the checker to run hashing again for a URL
+     *
+     * @param url whose keywords have been modified
+     */
+    public void requestHashing(String url){
+        hashingUrls.add(url);
+    }
+
+    /**
+     * Check if a CSS selector can be used to scope a check
+     *
+     * @param selector to check
+     * @return true if Jsoup can parse the selector
+     */
+    public static boolean isValidSelector(String selector){
+        try{
+            QueryParser.parse(selector);
+            return true;
+        }
+        catch (Selector.SelectorParseException | IllegalArgumentException e){
+            return false;
+        }
+    }
+
+    /**
+     * URL the page is fetched from, together with its fetcher
+     */
+    private static class FetchTarget {
+
+        private final String url;
+        private final PageFetcher fetcher;
+
+        private FetchTarget(String url, PageFetcher fetcher){
+            this.url = url;
+            this.fetcher = fetcher;
+        }
+    }
+
+    /**
+     * Keyword occurrences of a single check, kept in primitive arrays until
+     * the digest of the page shows whether they have to be checked at all
+     */
+    private static class Occurrences {
+
+        private int[] keywordIndexes = new int[16];
+        private int[] indexes = new int[16];
+        private long[] fingerprints = new long[16];
+        private int size;
+
+        private void add(int keywordIndex, int index, String window){
+            if(size == indexes.length){
+                keywordIndexes = Arrays.copyOf(keywordIndexes, size * 2);
+                indexes = Arrays.copyOf(indexes, size * 2);
+                fingerprints = Arrays.copyOf(fingerprints, size * 2);
+            }
+            keywordIndexes[size] = keywordIndex;
+            indexes[size] = index;
+            fingerprints[size] = FingerprintSet.fingerprint(window);
+            size++;
+        }
+
+        private void clear(){ size = 0; }
+
+        private int size(){ return size; }
+
+        private int keywordIndex(int i){ return keywordIndexes[i]; }
+
+        private int index(int i){ return indexes[i]; }
+
+        private long fingerprint(int i){ return fingerprints[i]; }
+    }
 }
@@ -0,0 +1,28 @@
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * MatchSink that prints the notifications to the standard output
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class ConsoleSink implements MatchSink {
+
+    @Override
+    public void matchFound(String url, String keyword) {
+        System.out.println(timestamp() + " MATCH " + url + " \"" + keyword + "\"");
+    }
+
+    @Override
+    public void error(String message) {
+        System.err.println(timestamp() + " ERROR " + message);
+    }
+
+    /**
+     * @return current time formatted for the output
+     */
+    private String timestamp(){
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+    }
+}
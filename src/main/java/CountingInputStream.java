@@ -0,0 +1,53 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream wrapper that counts the bytes read through it
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    /**
+     * Constructor for the CountingInputStream class
+     *
+     * @param in stream to count the bytes of
+     */
+    public CountingInputStream(InputStream in){
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if(b != -1){
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if(n > 0){
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    /**
+     * @return number of bytes read so far
+     */
+    public long getCount(){ return count; }
+}
@@ -1,9 +1,18 @@
-import javafx.application.Platform;
 import java.awt.*;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * DataManager class is responsible for modifying the data used
@@ -14,19 +23,32 @@ import java.util.HashMap;
  */
 public class DataManager {
 
-    private HashMap<String, ArrayList<String>> urlKeyMap;
-    private ArrayList<Integer> hashList;
-    private ArrayList<String> logList;
+    private volatile ConcurrentHashMap<String, KeywordSnapshot> urlKeyMap;
+    private final FingerprintSet fingerprints;
+    private volatile FingerprintStore fingerprintStore;
+    private boolean warmStart;
+    private LogStore logList;
+    private final ConcurrentHashMap<String, Long> intervals;
+    private final Set<String> changedIntervals;
+    private final ConcurrentHashMap<String, String> selectors;
     private final SaveManager saveManager;
-    private final Main main;
+    private final Settings settings;
+    private final List<MatchSink> sinks;
+    private final NotificationQueue notifications;
 
     /**
      * Constructor for the DataManager class
      *
-     * @param main Main object
+     * @param settings Settings object
      */
-    public DataManager(Main main){
-        this.main = main;
+    public DataManager(Settings settings){
+        this.settings = settings;
+        sinks = new CopyOnWriteArrayList<>();
+        intervals = new ConcurrentHashMap<>();
+        changedIntervals = ConcurrentHashMap.newKeySet();
+        selectors = new ConcurrentHashMap<>();
+        notifications = new NotificationQueue(sinks, settings.getLong("notificationWindow", 250));
+        fingerprints = new FingerprintSet();
         saveManager = new SaveManager(this);
     }
 
@@ -34,18 +56,55 @@ public class DataManager {
      * Load the data from the save manager
      */
     synchronized public void load(){
-        urlKeyMap = new HashMap<>();
-        logList = new ArrayList<>();
-        hashList = new ArrayList<>();
+        HashMap<String, ArrayList<String>> loadedKeyMap = new HashMap<>();
+        if(logList != null){
+            logList.close();
+        }
+        logList = new LogStore(settings.getInt("logMemoryEntries", 1000));
+        fingerprints.clear();
+        intervals.clear();
+        changedIntervals.clear();
+        selectors.clear();
+        warmStart = false;
+        closeFingerprintStore();
         if(saveManager.isPathSet()){
             try{
-                urlKeyMap = saveManager.loadKeyMap();
-                logList = saveManager.loadLogs();
+                saveManager.load(loadedKeyMap, logList, intervals, selectors);
             }
             catch (IOException e) {
+                loadedKeyMap.clear();
+                logList.clear();
+                intervals.clear();
+                selectors.clear();
                 error("Unable to load a save file");
             }
         }
+        ConcurrentHashMap<String, KeywordSnapshot> snapshots = new ConcurrentHashMap<>();
+        for (Map.Entry<String, ArrayList<String>> entry: loadedKeyMap.entrySet()) {
+            snapshots.put(entry.getKey(), new KeywordSnapshot(entry.getValue()));
+        }
+        urlKeyMap = snapshots; //publish the loaded URLs at once
+        if(saveManager.isPathSet()){
+            try{
+                FingerprintStore store = new FingerprintStore(saveManager.getFingerprintPath());
+                warmStart = store.loadInto(fingerprints) > 0;
+                fingerprintStore = store;
+            }
+            catch (IOException e) {
+                fingerprints.clear();
+                error("Unable to load the match history");
+            }
+        }
+    }
+
+    /**
+     * Check if the fingerprints of the previous session were loaded, in which
+     * case the checkers do not need to hash the pages again
+     *
+     * @return true if the fingerprint set was loaded from a file
+     */
+    synchronized public boolean isWarmStart(){
+        return warmStart;
     }
 
     /**
@@ -54,7 +113,19 @@ public class DataManager {
      * @param url to add
      */
     synchronized public void addUrl(String url){
-        urlKeyMap.put(url, new ArrayList<>());
+        urlKeyMap.put(url, new KeywordSnapshot(Collections.emptyList()));
+        saveManager.recordChange(SaveJournal.ADD_URL, url);
+    }
+
+    /**
+     * Add a batch of URLs with no keywords to the urlKeyMap
+     *
+     * @param urls to add
+     */
+    synchronized public void addUrls(Collection<String> urls){
+        for (String url: urls) {
+            addUrl(url);
+        }
     }
 
     /**
@@ -63,67 +134,173 @@ public class DataManager {
      * @param url
      */
     synchronized public void deleteUrl(String url) {
-        urlKeyMap.get(url).clear();
         urlKeyMap.remove(url);
+        intervals.remove(url);
+        changedIntervals.remove(url);
+        selectors.remove(url);
+        saveManager.recordChange(SaveJournal.DELETE_URL, url);
     }
 
     /**
-     * Add a new keyword to the list mapped to an existing URL
+     * Add a new keyword to the list mapped to an existing URL, publishing
+     * a new snapshot of the keywords. Edits are serialized on the monitor
+     * so that the journal sees them in the same order as the map
      *
      * @param url Hashmap key
      * @param keyword to add
      */
     synchronized public void addKeyword(String url, String keyword){
-        urlKeyMap.get(url).add(keyword);
+        urlKeyMap.computeIfPresent(url, (key, snapshot) -> snapshot.with(keyword));
+        saveManager.recordChange(SaveJournal.ADD_KEYWORD, url, keyword);
     }
 
     /**
-     * Remove a keyword from the list mapped to an existing URL
+     * Remove a keyword from the list mapped to an existing URL, publishing
+     * a new snapshot of the keywords
      *
      * @param url Hashmap key
      * @param keyword to add
      */
     synchronized public void deleteKeyword(String url, String keyword) {
-        urlKeyMap.get(url).remove(keyword);
+        urlKeyMap.computeIfPresent(url, (key, snapshot) -> snapshot.without(keyword));
+        saveManager.recordChange(SaveJournal.DELETE_KEYWORD, url, keyword);
     }
 
     /**
-     * Get the list of keywords mapped to a URL
+     * Get the current snapshot of the keywords of a URL, without locking
      *
      * @param url key map
-     * @return keyword list associated to the URL
+     * @return keyword snapshot or null if the URL is not monitored
      */
-    public ArrayList<String> getKeywords(String url){
+    public KeywordSnapshot getKeywordSnapshot(String url){
         return urlKeyMap.get(url);
     }
 
     /**
-     * Get the urlKeyMap object
+     * Get the list of keywords mapped to a URL
+     *
+     * @param url key map
+     * @return read-only keyword list associated to the URL, or null
+     */
+    public List<String> getKeywords(String url){
+        KeywordSnapshot snapshot = urlKeyMap.get(url);
+        return snapshot == null ? null : snapshot.getKeywords();
+    }
+
+    /**
+     * Get the monitored URLs
+     *
+     * @return live read-only view of the URLs
+     */
+    public Set<String> getUrls(){
+        return Collections.unmodifiableSet(urlKeyMap.keySet());
+    }
+
+    /**
+     * Get a copy of the URL to keywords map, each keyword list is the
+     * current read-only snapshot
      *
-     * @return urlKeyMap
+     * @return URL to keywords map
      */
-    public HashMap<String, ArrayList<String>> getUrlKeyMap(){
-        return urlKeyMap;
+    public Map<String, List<String>> getUrlKeyMap(){
+        Map<String, List<String>> copy = new HashMap<>();
+        for (Map.Entry<String, KeywordSnapshot> entry: urlKeyMap.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().getKeywords());
+        }
+        return copy;
     }
 
     /**
-     * Check if the input String has a corresponding hash value stored
-     * in the hashList, add it if not
+     * Check if the input String has a corresponding fingerprint stored
+     * in the fingerprint set, add it if not. The set has its own lock, so
+     * the checkers do not contend on the DataManager monitor
      *
      * @param str input String
      * @return true if the String was already hashed
      */
-    synchronized public boolean addHashIfNotExcluded(String str){
-        int hash = str.hashCode();
-        boolean isExcluded = hashList.contains(hash);
-        if (!isExcluded) {
-            hashList.add(hash);
+    public boolean addHashIfNotExcluded(String str){
+        return addFingerprintIfNotExcluded(FingerprintSet.fingerprint(str));
+    }
 
-            System.out.println(hash);
+    /**
+     * Check if a fingerprint is stored in the fingerprint set, add it if not
+     *
+     * @param fingerprint of the input String
+     * @return true if the fingerprint was already stored
+     */
+    public boolean addFingerprintIfNotExcluded(long fingerprint){
+        boolean isExcluded = !fingerprints.add(fingerprint);
+        if (!isExcluded) {
+            FingerprintStore store = fingerprintStore;
+            if(store != null){
+                try{
+                    store.append(fingerprint);
+                }
+                catch (IOException e){
+                    error("Unable to write the match history");
+                }
+            }
         }
         return isExcluded;
     }
 
+    /**
+     * @return number of stored fingerprints
+     */
+    public long getFingerprintCount(){
+        return fingerprints.size();
+    }
+
+    /**
+     * Write the fingerprints added since the last flush to the fingerprint file
+     */
+    public void flushFingerprints(){
+        FingerprintStore store = fingerprintStore;
+        if(store != null){
+            try{
+                store.flush();
+            }
+            catch (IOException e){
+                error("Unable to write the match history");
+            }
+        }
+    }
+
+    /**
+     * Write the fingerprints next to the current save file, rewriting the
+     * whole fingerprint file if the save file has moved
+     *
+     * @throws IOException
+     */
+    private void saveFingerprints() throws IOException {
+        Path path = saveManager.getFingerprintPath();
+        if(path == null){
+            return;
+        }
+        if(fingerprintStore == null || !fingerprintStore.getPath().equals(path)){
+            closeFingerprintStore();
+            FingerprintStore store = new FingerprintStore(path);
+            store.rewrite(fingerprints.toArray());
+            fingerprintStore = store;
+        }
+        fingerprintStore.flush();
+    }
+
+    /**
+     * Close the current fingerprint file
+     */
+    private void closeFingerprintStore(){
+        if(fingerprintStore != null){
+            try{
+                fingerprintStore.close();
+            }
+            catch (IOException e){
+                error("Unable to write the match history");
+            }
+            fingerprintStore = null;
+        }
+    }
+
     /**
      * Add a new log entry to the logList
      *
@@ -131,15 +308,20 @@ public class DataManager {
      */
     synchronized public void addLogEntry(String log){
         logList.add(log);
+        saveManager.recordChange(SaveJournal.ADD_LOG, log);
     }
 
     /**
      * Remove a log entry from the logList
      *
-     * @param log entry to remove
+     * @param id of the log entry, see LogStore.getId
      */
-    synchronized public void removeLogEntry(String log) {
-        logList.remove(log);
+    synchronized public void removeLogEntry(long id) {
+        int index = logList.indexOfId(id);
+        if(index != -1){
+            logList.removeById(id);
+            saveManager.recordChange(SaveJournal.REMOVE_LOG_AT, Integer.toString(index));
+        }
     }
 
     /**
@@ -147,6 +329,90 @@ public class DataManager {
      */
     synchronized public void clearLogs(){
         logList.clear();
+        saveManager.recordChange(SaveJournal.CLEAR_LOGS);
+    }
+
+    /**
+     * Get a log entry
+     *
+     * @param index of the entry
+     * @return log entry
+     */
+    synchronized public String getLogEntry(int index){
+        return logList.get(index);
+    }
+
+    /**
+     * @return number of log entries
+     */
+    synchronized public int getLogCount(){
+        return logList.size();
+    }
+
+    /**
+     * Get the check interval learned for a URL
+     *
+     * @param url to look up
+     * @return interval in milliseconds or null if none was learned
+     */
+    public Long getInterval(String url){
+        return intervals.get(url);
+    }
+
+    /**
+     * Store the check interval learned for a URL, it is saved with the
+     * next save
+     *
+     * @param url of the checked page
+     * @param interval in milliseconds
+     */
+    public void setInterval(String url, long interval){
+        Long previous = intervals.put(url, interval);
+        if(previous == null || previous != interval){
+            changedIntervals.add(url);
+        }
+    }
+
+    /**
+     * @return check intervals learned for the URLs, in milliseconds
+     */
+    public Map<String, Long> getIntervals(){
+        return intervals;
+    }
+
+    /**
+     * Get the CSS selector a URL is scoped to
+     *
+     * @param url to look up
+     * @return selector or null if the whole page is checked
+     */
+    public String getSelector(String url){
+        return selectors.get(url);
+    }
+
+    /**
+     * Scope the checks of a URL to the elements matched by a CSS selector
+     *
+     * @param url of a monitored page
+     * @param selector to scope the checks to, null or empty to check the whole page
+     */
+    synchronized public void setSelector(String url, String selector){
+        if(selector == null || selector.trim().isEmpty()){
+            selectors.remove(url);
+            selector = "";
+        }
+        else{
+            selector = selector.trim();
+            selectors.put(url, selector);
+        }
+        saveManager.recordChange(SaveJournal.SET_SELECTOR, url, selector);
+    }
+
+    /**
+     * @return CSS selectors by URL
+     */
+    public Map<String, String> getSelectors(){
+        return selectors;
     }
 
     /**
@@ -154,7 +420,7 @@ public class DataManager {
      *
      * @return logList
      */
-    public ArrayList<String> getLogs(){
+    public LogStore getLogs(){
         return logList;
     }
 
@@ -162,30 +428,66 @@ public class DataManager {
      * Invoke the save method on the SaveManager object
      */
     synchronized public void save(){
+        for (String url: changedIntervals) {
+            changedIntervals.remove(url);
+            Long interval = intervals.get(url);
+            if(interval != null){
+                saveManager.recordChange(SaveJournal.SET_INTERVAL, url, Long.toString(interval));
+            }
+        }
         try {
             saveManager.save();
+            saveFingerprints();
         } catch (IOException e) {
             error("Saving failed");
         }
     }
 
     /**
-     * Create a success notification in the Main object
+     * Register a sink for the match and error notifications
+     *
+     * @param sink to add
+     */
+    public void addSink(MatchSink sink){
+        sinks.add(sink);
+    }
+
+    /**
+     * Queue a success notification for the registered sinks, never blocks
      *
      * @param url of the website were match occurred
      * @param keyword on which the match occurred
      */
-    synchronized public void matchFound(String url, String keyword){
-        Platform.runLater(() -> main.matchNotification(url, keyword));
+    public void matchFound(String url, String keyword){
+        notifications.matchFound(url, keyword);
     }
 
     /**
-     * Create an error notification in the Main object
+     * Queue an error notification for the registered sinks, never blocks
      *
      * @param message to display
      */
-    synchronized public void error(String message){
-        Platform.runLater(() -> main.errorNotification(message));
+    public void error(String message){
+        notifications.error(message);
+    }
+
+    /**
+     * Deliver the queued notifications and stop delivering new ones
+     */
+    public void closeNotifications(){
+        notifications.close(5000);
+    }
+
+    /**
+     * Create a String log entry for a match
+     *
+     * @param url where the match was found
+     * @param keyword on which the match was found
+     * @return log entry
+     */
+    public static String formatLogEntry(String url, String keyword){
+        SimpleDateFormat sdt = new SimpleDateFormat("HH:mm:ss/dd.MM");
+        return url + " on \"" + keyword + "\" at " + sdt.format(new Date());
     }
 
     /**
@@ -209,6 +511,11 @@ public class DataManager {
         }
     }
 
+    /**
+     * @return Settings object
+     */
+    public Settings getSettings(){ return settings; }
+
     /**
      * @return SaveManager object
      */
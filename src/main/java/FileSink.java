@@ -0,0 +1,55 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * MatchSink that appends the notifications to a text file, one per line
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class FileSink implements MatchSink {
+
+    private final Path path;
+
+    /**
+     * Constructor for the FileSink class
+     *
+     * @param path to the output file
+     */
+    public FileSink(Path path){
+        this.path = path;
+    }
+
+    @Override
+    public void matchFound(String url, String keyword) {
+        write("MATCH\t" + url + "\t" + keyword);
+    }
+
+    @Override
+    public void error(String message) {
+        write("ERROR\t" + message);
+    }
+
+    /**
+     * Append a timestamped line to the file
+     *
+     * @param line to append
+     */
+    synchronized private void write(String line){
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(timestamp + "\t" + line);
+            writer.newLine();
+        }
+        catch (IOException e){
+            System.err.println("Unable to write to " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/**
+ * FingerprintSet is a set of 64-bit String fingerprints stored in a primitive
+ * open-addressing hash table that grows when it becomes half full
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class FingerprintSet {
+
+    private static final long EMPTY = 0L;
+
+    private long[] table;
+    private int mask;
+    private int size;
+
+    /**
+     * Constructor for the FingerprintSet class
+     */
+    public FingerprintSet(){
+        this(1024);
+    }
+
+    /**
+     * Constructor for the FingerprintSet class
+     *
+     * @param expectedSize number of fingerprints the set should hold without resizing
+     */
+    public FingerprintSet(int expectedSize){
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        table = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Compute a 64-bit fingerprint of a String with FNV-1a and a final
+     * avalanche step, so that every bit of the result is well mixed
+     *
+     * @param str input String
+     * @return fingerprint, never 0
+     */
+    public static long fingerprint(CharSequence str){
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1L : hash; //0 marks an empty slot
+    }
+
+    /**
+     * Add a fingerprint to the set
+     *
+     * @param fingerprint to add
+     * @return true if the fingerprint was not in the set before
+     */
+    synchronized public boolean add(long fingerprint){
+        int index = indexOf(table, mask, fingerprint);
+        if(table[index] == fingerprint){
+            return false;
+        }
+        table[index] = fingerprint;
+        size++;
+        if(size * 2 > table.length){
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Check if the set contains a fingerprint
+     *
+     * @param fingerprint to look up
+     * @return true if the fingerprint is in the set
+     */
+    synchronized public boolean contains(long fingerprint){
+        return table[indexOf(table, mask, fingerprint)] == fingerprint;
+    }
+
+    /**
+     * @return number of fingerprints in the set
+     */
+    synchronized public int size(){ return size; }
+
+    /**
+     * Copy the fingerprints into an array
+     *
+     * @return array of all fingerprints in the set
+     */
+    synchronized public long[] toArray(){
+        long[] fingerprints = new long[size];
+        int count = 0;
+        for (long fingerprint : table) {
+            if(fingerprint != EMPTY){
+                fingerprints[count++] = fingerprint;
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Remove all of the fingerprints from the set
+     */
+    synchronized public void clear(){
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Find the slot that holds a fingerprint, or the empty slot where
+     * it should be inserted, using linear probing
+     *
+     * @param table to search
+     * @param mask table length - 1
+     * @param fingerprint to look up
+     * @return slot index
+     */
+    private static int indexOf(long[] table, int mask, long fingerprint){
+        int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while(table[index] != EMPTY && table[index] != fingerprint){
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Double the capacity of the table and reinsert the fingerprints
+     */
+    private void resize(){
+        long[] newTable = new long[table.length * 2];
+        int newMask = newTable.length - 1;
+        for (long fingerprint : table) {
+            if(fingerprint != EMPTY){
+                newTable[indexOf(newTable, newMask, fingerprint)] = fingerprint;
+            }
+        }
+        table = newTable;
+        mask = newMask;
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FingerprintStore keeps the match fingerprints in an append-only binary
+ * file next to the save file, so that the checkers do not have to hash
+ * every page again after a restart
+ *
+ * File layout: magic number, format version, then one 64-bit fingerprint
+ * per entry in big-endian order
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class FingerprintStore {
+
+    private static final int MAGIC = 0x55534650; //"USFP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private final Path path;
+    private DataOutputStream output;
+    private boolean dirty;
+
+    /**
+     * Constructor for the FingerprintStore class
+     *
+     * @param path to the fingerprint file
+     */
+    public FingerprintStore(Path path){
+        this.path = path;
+    }
+
+    /**
+     * @return path to the fingerprint file
+     */
+    public Path getPath(){ return path; }
+
+    /**
+     * Read all of the fingerprints from the file into a set. A partially
+     * written entry at the end of the file is ignored
+     *
+     * @param set to load the fingerprints into
+     * @return number of fingerprints read
+     * @throws IOException if the file is not a fingerprint file
+     */
+    public int loadInto(FingerprintSet set) throws IOException {
+        if(!Files.exists(path)){
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER_SIZE){
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                throw new IOException("Unknown fingerprint file format");
+            }
+            LongBuffer fingerprints = buffer.asLongBuffer();
+            int count = fingerprints.remaining();
+            for (int i = 0; i < count; i++) {
+                set.add(fingerprints.get(i));
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Append a fingerprint to the file, the write is buffered until
+     * the next flush
+     *
+     * @param fingerprint to append
+     * @throws IOException
+     */
+    synchronized public void append(long fingerprint) throws IOException {
+        if(output == null){
+            open(false);
+        }
+        output.writeLong(fingerprint);
+        dirty = true;
+    }
+
+    /**
+     * Replace the content of the file with the given fingerprints
+     *
+     * @param fingerprints to write
+     * @throws IOException
+     */
+    synchronized public void rewrite(long[] fingerprints) throws IOException {
+        close();
+        open(true);
+        for (long fingerprint : fingerprints) {
+            output.writeLong(fingerprint);
+        }
+        dirty = true;
+        flush();
+    }
+
+    /**
+     * Write the buffered fingerprints to the file
+     *
+     * @throws IOException
+     */
+    synchronized public void flush() throws IOException {
+        if(dirty){
+            output.flush();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Flush and close the file
+     *
+     * @throws IOException
+     */
+    synchronized public void close() throws IOException {
+        if(output != null){
+            output.close();
+            output = null;
+            dirty = false;
+        }
+    }
+
+    /**
+     * Open the file for appending, writing the header if the file is new
+     *
+     * @param truncate discard the existing content of the file
+     * @throws IOException
+     */
+    private void open(boolean truncate) throws IOException {
+        boolean writeHeader = truncate || !Files.exists(path) || Files.size(path) < HEADER_SIZE;
+        StandardOpenOption mode = writeHeader ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+        output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)));
+        if(writeHeader){
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+        }
+        else{
+            alignToEntry();
+        }
+    }
+
+    /**
+     * Pad a partially written entry left by a crash, so that the new
+     * entries start on an 8 byte boundary. The padded entry is a
+     * harmless extra fingerprint
+     *
+     * @throws IOException
+     */
+    private void alignToEntry() throws IOException {
+        long remainder = (Files.size(path) - HEADER_SIZE) % Long.BYTES;
+        if(remainder != 0){
+            output.write(ByteBuffer.allocate((int) (Long.BYTES - remainder)).array());
+        }
+    }
+}
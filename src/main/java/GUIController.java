@@ -7,9 +7,12 @@ import javafx.scene.control.*;
 import javafx.scene.input.MouseEvent;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * FXML controller class for the application's GUI
@@ -25,17 +28,21 @@ public class GUIController {
     @FXML private ListView<String> urlView;
     @FXML private ListView<String> keyView;
     @FXML private ListView<String> logView;
+    private LogListModel logModel;
     @FXML private MenuItem quitMenu;
     @FXML private MenuItem refreshMenu;
     @FXML private MenuItem aboutMenu;
     @FXML private MenuItem openMenu;
+    @FXML private MenuItem importMenu;
     @FXML private MenuItem saveMenu;
     @FXML private MenuItem saveAsMenu;
     @FXML private MenuItem bugMenu;
     @FXML private Label versionLabel;
+    @FXML private Label importLabel;
     private ThreadMonitor threadMonitor;
     private DataManager dataManager;
     private URLFormatter formatter;
+    private URLImporter importer;
 
     /**
      * Initialization method for the controller
@@ -44,7 +51,6 @@ public class GUIController {
     public void initialize(){
         addChangeListener();
         setUrlOpenEvent();
-        formatter = new URLFormatter();
     }
 
     /**
@@ -54,6 +60,7 @@ public class GUIController {
      */
     public void setThreadMonitor(ThreadMonitor threadMonitor){
         this.threadMonitor = threadMonitor;
+        formatter = new URLFormatter(threadMonitor.getHttpClient());
     }
 
     /**
@@ -103,8 +110,9 @@ public class GUIController {
      * Repopulate the views with data from the DataManager
      */
     public void repopulate(){
-        urlView.getItems().setAll(dataManager.getUrlKeyMap().keySet());
-        logView.getItems().setAll(dataManager.getLogs());
+        urlView.getItems().setAll(dataManager.getUrls());
+        logModel = new LogListModel(dataManager);
+        logView.setItems(logModel);
         updateKeyView();
     }
 
@@ -119,31 +127,91 @@ public class GUIController {
 
     /**
      * Method invoked by the URL Submit button that checks the validity of the input
-     * and adds the formatted URl to the urlView
+     * and adds the formatted URl to the urlView. Several URLs separated by
+     * whitespace or commas are imported together
      */
     @FXML
     private void urlSubmit(){
-        String url = formatter.formatURL(urlField.getText());
-        if(formatter.validateURL(url)){
-            boolean estConnection = false;
-            try{
-                estConnection = formatter.pingURL(url);
+        List<String> urls;
+        try{
+            urls = URLImporter.readList(new StringReader(urlField.getText()));
+        }
+        catch (IOException e){
+            return; //reading from a String does not fail
+        }
+        if(!urls.isEmpty()){
+            importUrls(urls);
+        }
+    }
+
+    /**
+     * Validate a list of URLs in the background and add the ones that can
+     * be reached to the urlView in one batch, the progress is shown in
+     * the status bar
+     *
+     * @param urls as entered by the user
+     */
+    public void importUrls(List<String> urls){
+        if(importer == null){
+            importer = new URLImporter(formatter, dataManager.getSettings().getInt("importConcurrency", 32));
+        }
+        urlField.setDisable(true);
+        importLabel.setText("Validating " + urls.size() + (urls.size() == 1 ? " URL" : " URLs"));
+        AtomicBoolean updatePending = new AtomicBoolean();
+        AtomicInteger progress = new AtomicInteger();
+        importer.validate(urls, url -> dataManager.getKeywords(url) != null, new URLImporter.ImportListener() {
+            @Override
+            public void progress(int done, int total) {
+                progress.accumulateAndGet(done, Math::max);
+                if(updatePending.compareAndSet(false, true)){ //one pending update at a time, the UI shows the latest count
+                    Platform.runLater(() -> {
+                        updatePending.set(false);
+                        importLabel.setText("Validating URLs " + progress.get() + "/" + total);
+                    });
+                }
             }
-            catch (IOException e){
-                dataManager.error("Unable to connect to the URL");
+
+            @Override
+            public void finished(URLImporter.Result result) {
+                Platform.runLater(() -> importFinished(urls.size(), result));
             }
-            if(estConnection){
-                urlView.getItems().add(url);
-                dataManager.addUrl(url);
-                threadMonitor.createThread(url);
-                urlField.clear();
+        });
+    }
+
+    /**
+     * Add the validated URLs and report the ones that were rejected
+     *
+     * @param requested number of URLs that were submitted
+     * @param result of the validation
+     */
+    private void importFinished(int requested, URLImporter.Result result){
+        List<String> accepted = result.getAccepted();
+        dataManager.addUrls(accepted);
+        threadMonitor.createThreads(accepted);
+        urlView.getItems().addAll(accepted);
+        urlField.setDisable(false);
+        for (Map.Entry<String, String> rejected: result.getRejected().entrySet()) {
+            System.out.println(rejected.getValue() + ": " + rejected.getKey());
+        }
+        if(requested == 1){
+            importLabel.setText("");
+            if(!result.getRejected().isEmpty()){
+                dataManager.error(result.getRejected().values().iterator().next());
+            }
+            else if(result.getSkipped() > 0){
+                dataManager.error("The URL is already monitored");
             }
             else{
-                dataManager.error("Unable to connect to the URL");
+                urlField.clear();
             }
         }
-        else {
-            dataManager.error("Invalid URL");
+        else{
+            importLabel.setText("Imported " + accepted.size() + " of " + requested + " URLs, "
+                    + result.getRejected().size() + " rejected, " + result.getSkipped() + " already monitored");
+            if(!result.getRejected().isEmpty()){
+                dataManager.error(result.getRejected().size() + " URLs could not be imported");
+            }
+            urlField.clear();
         }
     }
 
@@ -175,9 +243,15 @@ public class GUIController {
         else{
             String key = keyField.getText();
             if (key != null) {
+                //the text is matched in lowercase, but a regex keeps its case for escapes like \W
+                key = key.startsWith(PatternMatcher.REGEX_PREFIX) ? key : key.toLowerCase();
                 String selectedUrl = urlView.getSelectionModel().getSelectedItem();
-                if(!dataManager.getKeywords(selectedUrl).contains(key.toLowerCase())){
-                    dataManager.addKeyword(selectedUrl, key.toLowerCase());
+                String patternError = PatternMatcher.validate(key);
+                if(patternError != null){
+                    dataManager.error(patternError);
+                }
+                else if(!dataManager.getKeywords(selectedUrl).contains(key)){
+                    dataManager.addKeyword(selectedUrl, key);
                     threadMonitor.requestHashing(selectedUrl);
                     updateKeyView();
                     keyField.clear();
@@ -201,6 +275,11 @@ public class GUIController {
      */
     public MenuItem getOpenMenuItem(){ return openMenu; }
 
+    /**
+     * @return importMenu MenuItem
+     */
+    public MenuItem getImportMenuItem(){ return importMenu; }
+
     /**
      * @return quitMenu MenuItem
      */
@@ -226,18 +305,15 @@ public class GUIController {
 
 
     /**
-     * Create a String log entry when a new match was found
-     * and add it to the logView
+     * Add the log entries of a batch of matches to the logView at once
      *
-     * @param url where the match was found
-     * @param keyword on which the match was found
+     * @param matches grouped by URL and keyword
      */
-    public void addLogEntry(String url, String keyword){
-        SimpleDateFormat sdt = new SimpleDateFormat("HH:mm:ss/dd.MM");
-        Date now = new Date();
-        String logEntry = url + " on \"" + keyword + "\" at " + sdt.format(now);
-        logView.getItems().add(logEntry);
-        dataManager.addLogEntry(logEntry);
+    public void addLogEntries(List<MatchEvent> matches){
+        for (MatchEvent match: matches) {
+            dataManager.addLogEntry(DataManager.formatLogEntry(match.getUrl(), match.getKeyword()));
+        }
+        logModel.entriesAdded(matches.size());
     }
 
     /**
@@ -260,9 +336,34 @@ public class GUIController {
     @FXML
     private void deleteUrl(){
         String selectedUrl = urlView.getSelectionModel().getSelectedItem();
+        threadMonitor.stopThread(selectedUrl); //the check key depends on the selector stored with the URL
         dataManager.deleteUrl(selectedUrl);
-        urlView.getItems().setAll(dataManager.getUrlKeyMap().keySet());
-        threadMonitor.stopThread(selectedUrl);
+        urlView.getItems().setAll(dataManager.getUrls());
+    }
+
+    /**
+     * Method invoked by the Set CSS Selector contextual menu that scopes the
+     * checks of a selected URL to the elements matched by a CSS selector
+     */
+    @FXML
+    private void editSelector(){
+        String selectedUrl = urlView.getSelectionModel().getSelectedItem();
+        if(selectedUrl == null){
+            return;
+        }
+        String current = dataManager.getSelector(selectedUrl);
+        TextInputDialog dialog = new TextInputDialog(current == null ? "" : current);
+        dialog.setTitle("CSS selector");
+        dialog.setHeaderText("Check only the elements matched by the selector, leave empty to check the whole page");
+        dialog.showAndWait().ifPresent(selector -> {
+            selector = selector.trim();
+            if(!selector.isEmpty() && !CheckerThread.isValidSelector(selector)){
+                dataManager.error("Invalid CSS selector");
+            }
+            else if(!selector.equals(current == null ? "" : current)){
+                threadMonitor.setSelector(selectedUrl, selector);
+            }
+        });
     }
 
     /**
@@ -271,9 +372,12 @@ public class GUIController {
      */
     @FXML
     private void deleteLogEntry(){
-        String selectedEntry = logView.getSelectionModel().getSelectedItem();
-        dataManager.removeLogEntry(selectedEntry);
-        logView.getItems().setAll(dataManager.getLogs());
+        int selectedIndex = logView.getSelectionModel().getSelectedIndex();
+        if(selectedIndex >= 0){
+            String selectedEntry = logView.getSelectionModel().getSelectedItem();
+            dataManager.removeLogEntry(dataManager.getLogs().getId(selectedIndex));
+            logModel.entryRemoved(selectedIndex, selectedEntry);
+        }
     }
 
     /**
@@ -283,7 +387,8 @@ public class GUIController {
     @FXML
     private void clearLog(){
         dataManager.clearLogs();
-        logView.getItems().clear();
+        logModel = new LogListModel(dataManager);
+        logView.setItems(logModel);
     }
 
 }
@@ -0,0 +1,72 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HashRing assigns keys to nodes by consistent hashing. Every node is placed
+ * on the ring at a number of virtual points and a key belongs to the first
+ * point at or after its own hash, so adding or removing a node only moves
+ * the keys of the neighbouring points
+ *
+ * The ring is not thread safe
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class HashRing {
+
+    private final TreeMap<Long, String> points;
+    private final int virtualNodes;
+
+    /**
+     * Constructor for the HashRing class
+     *
+     * @param virtualNodes number of points per node, more points spread the keys more evenly
+     */
+    public HashRing(int virtualNodes){
+        points = new TreeMap<>();
+        this.virtualNodes = Math.max(1, virtualNodes);
+    }
+
+    /**
+     * Place a node on the ring
+     *
+     * @param node ID of the node
+     */
+    public void add(String node){
+        for (int i = 0; i < virtualNodes; i++) {
+            points.put(FingerprintSet.fingerprint(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * Remove a node from the ring, its keys move to the following nodes
+     *
+     * @param node ID of the node
+     */
+    public void remove(String node){
+        for (int i = 0; i < virtualNodes; i++) {
+            points.remove(FingerprintSet.fingerprint(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * Find the node a key belongs to
+     *
+     * @param key to look up
+     * @return ID of the node or null if the ring is empty
+     */
+    public String get(String key){
+        if(points.isEmpty()){
+            return null;
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(FingerprintSet.fingerprint(key));
+        return point == null ? points.firstEntry().getValue() : point.getValue(); //wrap around
+    }
+
+    /**
+     * @return true if there are no nodes on the ring
+     */
+    public boolean isEmpty(){
+        return points.isEmpty();
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point that runs the checkers from a save file without loading
+ * JavaFX or AWT, delivering the notifications to the configured sinks. The
+ * checks can be sharded over worker processes: a coordinator holds the save
+ * file and the log, the workers connect to it and check their share of the
+ * URLs
+ *
+ * Usage: java -cp URL_Spy.jar HeadlessMain save-file [settings-file]
+ *        java -cp URL_Spy.jar HeadlessMain --coordinator port save-file [settings-file]
+ *        java -cp URL_Spy.jar HeadlessMain --worker host:port [settings-file]
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class HeadlessMain {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length >= 2 && args[0].equals("--worker")){
+            runWorker(args[1], args.length > 2 ? Paths.get(args[2]) : null);
+            return;
+        }
+        int port = -1;
+        if(args.length >= 3 && args[0].equals("--coordinator")){
+            try{
+                port = Integer.parseInt(args[1]);
+            }
+            catch (NumberFormatException e){
+                usage();
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if(args.length < 1 || args[0].startsWith("--")){
+            usage();
+        }
+        Path saveFile = Paths.get(args[0]);
+        if(!Files.exists(saveFile)){
+            System.err.println("Save file " + saveFile + " does not exist");
+            System.exit(1);
+        }
+        Settings settings = args.length > 1 ? Settings.load(Paths.get(args[1])) : new Settings();
+        SharedHttpClient.configureKeepAlive(settings); //before the first connection is opened
+
+        DataManager dataManager = new DataManager(settings);
+        for (MatchSink sink: createSinks(settings)) {
+            dataManager.addSink(sink);
+        }
+        dataManager.addSink(new MatchSink() {
+            @Override
+            public void matchFound(String url, String keyword) {
+                dataManager.addLogEntry(DataManager.formatLogEntry(url, keyword));
+            }
+
+            @Override
+            public void error(String message) {}
+        });
+        dataManager.getSaveManager().setPathToSave(saveFile);
+        dataManager.load();
+
+        ThreadMonitor threadMonitor = null;
+        ShardCoordinator coordinator = null;
+        if(port == -1){
+            threadMonitor = new ThreadMonitor(dataManager);
+            threadMonitor.startThreads();
+        }
+        else{
+            coordinator = new ShardCoordinator(dataManager, port);
+            coordinator.start();
+        }
+
+        long saveInterval = settings.getLong("saveInterval", 300);
+        ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "save");
+            thread.setDaemon(true);
+            return thread;
+        });
+        saver.scheduleWithFixedDelay(dataManager::save, saveInterval, saveInterval, TimeUnit.SECONDS);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        ThreadMonitor checks = threadMonitor;
+        ShardCoordinator shards = coordinator;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            saver.shutdownNow();
+            if(checks != null){
+                checks.shutdown();
+            }
+            if(shards != null){
+                shards.shutdown();
+            }
+            dataManager.closeNotifications();
+            dataManager.save();
+            stopped.countDown();
+        }));
+        stopped.await();
+    }
+
+    /**
+     * Run a shard worker until the process is stopped
+     *
+     * @param address host:port of the coordinator
+     * @param settingsFile to load the settings from, or null
+     * @throws IOException if the settings cannot be loaded
+     */
+    private static void runWorker(String address, Path settingsFile) throws IOException {
+        int separator = address.lastIndexOf(':');
+        int port = -1;
+        try{
+            port = Integer.parseInt(address.substring(separator + 1));
+        }
+        catch (NumberFormatException e){
+            usage();
+        }
+        String host = separator > 0 ? address.substring(0, separator) : "localhost";
+        Settings settings = settingsFile != null ? Settings.load(settingsFile) : new Settings();
+        SharedHttpClient.configureKeepAlive(settings); //before the first connection is opened
+        ShardWorker worker = new ShardWorker(settings, host, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::shutdown));
+        worker.run();
+    }
+
+    /**
+     * Print the usage and exit
+     */
+    private static void usage(){
+        System.err.println("Usage: HeadlessMain [--coordinator <port>] <save file> [settings file]");
+        System.err.println("       HeadlessMain --worker <host:port> [settings file]");
+        System.exit(1);
+    }
+
+    /**
+     * Create the sinks listed in the "sinks" setting, a comma separated list
+     * of "stdout", "file:path" and "webhook:url" entries
+     *
+     * @param settings to read the list from
+     * @return list of sinks
+     */
+    private static List<MatchSink> createSinks(Settings settings){
+        List<MatchSink> sinks = new ArrayList<>();
+        for (String entry: settings.get("sinks", "stdout").split(",")) {
+            entry = entry.trim();
+            if(entry.equals("stdout")){
+                sinks.add(new ConsoleSink());
+            }
+            else if(entry.startsWith("file:")){
+                sinks.add(new FileSink(Paths.get(entry.substring("file:".length()))));
+            }
+            else if(entry.startsWith("webhook:")){
+                sinks.add(new WebhookSink(entry.substring("webhook:".length())));
+            }
+            else if(!entry.isEmpty()){
+                System.err.println("Unknown sink " + entry);
+            }
+        }
+        return sinks;
+    }
+}
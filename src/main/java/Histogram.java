@@ -0,0 +1,118 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram is a lock-free log-linear histogram of non-negative values. Each
+ * power of two is split into 8 buckets, so the reported percentiles are
+ * within 12.5% of the recorded values
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /**
+     * Constructor for the Histogram class
+     */
+    public Histogram(){
+        buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Record a value, negative values are recorded as 0
+     *
+     * @param value to record
+     */
+    public void record(long value){
+        value = Math.max(value, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while(value > (current = max.get()) && !max.compareAndSet(current, value)){
+            //retry until the maximum is updated or a larger value is seen
+        }
+    }
+
+    /**
+     * Get the value below which the given fraction of the recorded values fall
+     *
+     * @param fraction between 0 and 1
+     * @return upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long percentile(double fraction){
+        long total = count.get();
+        if(total == 0){
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            cumulative += buckets.get(i);
+            if(cumulative >= target){
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount(){ return count.get(); }
+
+    /**
+     * @return sum of the recorded values
+     */
+    public long getSum(){ return sum.get(); }
+
+    /**
+     * @return mean of the recorded values, 0 if nothing was recorded
+     */
+    public double getMean(){
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    /**
+     * @return largest recorded value
+     */
+    public long getMax(){ return max.get(); }
+
+    /**
+     * @param value to look up
+     * @return index of the bucket holding the value
+     */
+    private static int bucketOf(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param bucket index
+     * @return largest value that falls into the bucket
+     */
+    private static long upperBound(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,295 @@
+import org.jsoup.nodes.Entities;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * HtmlTextReader tokenizes an HTML document as it is read and returns only
+ * the visible text, one character at a time. Markup, comments and the content
+ * of head, title, script and style elements are skipped, character references are
+ * decoded with Jsoup's entity table and whitespace is collapsed the same way
+ * Jsoup's text() does, so both ways of checking a page see the same text
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class HtmlTextReader {
+
+    private static final HashSet<String> INLINE_TAGS = new HashSet<>(Arrays.asList(
+            "a", "abbr", "b", "bdi", "bdo", "cite", "code", "data", "dfn", "em", "font", "i", "img", "kbd",
+            "label", "mark", "q", "s", "samp", "small", "span", "strike", "strong", "sub", "sup", "time",
+            "tt", "u", "var"));
+    private static final HashSet<String> RAW_TEXT_TAGS = new HashSet<>(Arrays.asList("script", "style", "title"));
+    private final Reader reader;
+    private final StringBuilder queued;
+    private int queuedIndex;
+    private int pushedBack;
+    private boolean pendingSpace;
+    private boolean textStarted;
+    private boolean inHead;
+
+    /**
+     * Constructor for the HtmlTextReader class
+     *
+     * @param reader to read the HTML document from, should be buffered
+     */
+    public HtmlTextReader(Reader reader){
+        this.reader = reader;
+        queued = new StringBuilder();
+        pushedBack = -1;
+    }
+
+    /**
+     * Read the next character of the visible text
+     *
+     * @return next character or -1 at the end of the document
+     * @throws IOException
+     */
+    public int read() throws IOException {
+        while(true){
+            int c = nextText();
+            if(c == -1){
+                return -1;
+            }
+            if(c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u00a0'){
+                pendingSpace = true;
+            }
+            else if(!inHead){
+                if(pendingSpace && textStarted){
+                    pendingSpace = false;
+                    queued.insert(queuedIndex, (char) c); //return the space first, the character next
+                    return ' ';
+                }
+                pendingSpace = false;
+                textStarted = true;
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Read the next text character, consuming any markup before it
+     *
+     * @return next character with references decoded or -1 at the end of the document
+     * @throws IOException
+     */
+    private int nextText() throws IOException {
+        while(true){
+            if(queuedIndex < queued.length()){
+                return queued.charAt(queuedIndex++);
+            }
+            queued.setLength(0);
+            queuedIndex = 0;
+            int c = next();
+            if(c == '<'){
+                int following = peek();
+                if(following == '/' || following == '!' || following == '?' || Character.isLetter(following)){
+                    readTag();
+                    continue;
+                }
+            }
+            else if(c == '&'){
+                readReference();
+                continue;
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Consume a tag, comment or declaration after its opening '<'
+     *
+     * @throws IOException
+     */
+    private void readTag() throws IOException {
+        int c = next();
+        if(c == '!'){
+            if(peek() == '-'){
+                skipComment();
+            }
+            else{
+                skipUntil('>');
+            }
+            return;
+        }
+        if(c == '?'){
+            skipUntil('>');
+            return;
+        }
+        boolean closing = c == '/';
+        StringBuilder name = new StringBuilder();
+        if(!closing){
+            name.append((char) Character.toLowerCase(c));
+        }
+        while((c = peek()) != -1 && (Character.isLetterOrDigit(c) || c == '-')){
+            name.append((char) Character.toLowerCase(next()));
+        }
+        skipAttributes();
+        String tag = name.toString();
+        if(tag.equals("head")){
+            inHead = !closing;
+        }
+        else if(tag.equals("body")){
+            inHead = false;
+        }
+        if(!closing && RAW_TEXT_TAGS.contains(tag)){
+            skipRawText(tag);
+        }
+        if(!INLINE_TAGS.contains(tag)){
+            pendingSpace = true; //block elements separate the text around them
+        }
+    }
+
+    /**
+     * Skip the attributes of a tag up to and including the closing '>'
+     *
+     * @throws IOException
+     */
+    private void skipAttributes() throws IOException {
+        int quote = -1;
+        int c;
+        while((c = next()) != -1){
+            if(quote != -1){
+                if(c == quote){
+                    quote = -1;
+                }
+            }
+            else if(c == '"' || c == '\''){
+                quote = c;
+            }
+            else if(c == '>'){
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skip the content of a script, style or title element including its end tag
+     *
+     * @param tag name of the element
+     * @throws IOException
+     */
+    private void skipRawText(String tag) throws IOException {
+        String endTag = "</" + tag;
+        int matched = 0;
+        int c;
+        while((c = next()) != -1){
+            if(Character.toLowerCase(c) == endTag.charAt(matched)){
+                matched++;
+                if(matched == endTag.length()){
+                    skipUntil('>');
+                    return;
+                }
+            }
+            else{
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * Skip a comment after its "<!" up to and including the closing "-->"
+     *
+     * @throws IOException
+     */
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c;
+        next(); //first dash of the opening "<!--"
+        if(peek() == '-'){
+            next();
+        }
+        while((c = next()) != -1){
+            if(c == '>' && dashes >= 2){
+                return;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+    }
+
+    /**
+     * Skip characters up to and including the given one
+     *
+     * @param end character to stop at
+     * @throws IOException
+     */
+    private void skipUntil(char end) throws IOException {
+        int c;
+        while((c = next()) != -1 && c != end){
+            //skip
+        }
+    }
+
+    /**
+     * Decode a character reference after its '&' and queue the result, an
+     * unknown reference is queued as it was written
+     *
+     * @throws IOException
+     */
+    private void readReference() throws IOException {
+        StringBuilder name = new StringBuilder();
+        int c;
+        while(name.length() < 32 && (c = peek()) != -1 && (Character.isLetterOrDigit(c) || c == '#')){ //the longest entity name has 31 characters
+            name.append((char) next());
+        }
+        boolean terminated = peek() == ';';
+        if(terminated){
+            next();
+        }
+        String reference = name.toString();
+        int codePoint = -1;
+        String named = "";
+        try{
+            if(reference.startsWith("#x") || reference.startsWith("#X")){
+                codePoint = Integer.parseInt(reference.substring(2), 16);
+            }
+            else if(reference.startsWith("#")){
+                codePoint = Integer.parseInt(reference.substring(1));
+            }
+            else if(terminated || Entities.isBaseNamedEntity(reference)){ //like Jsoup, only the base entities may omit the ';'
+                named = Entities.getByName(reference);
+            }
+        }
+        catch (NumberFormatException e){
+            codePoint = -1;
+        }
+        if(codePoint >= 0 && Character.isValidCodePoint(codePoint)){
+            queued.appendCodePoint(codePoint);
+        }
+        else if(!named.isEmpty()){
+            queued.append(named);
+        }
+        else{
+            queued.append('&').append(reference);
+            if(terminated){
+                queued.append(';');
+            }
+        }
+    }
+
+    /**
+     * @return next character of the document or -1 at the end
+     * @throws IOException
+     */
+    private int next() throws IOException {
+        if(pushedBack != -1){
+            int c = pushedBack;
+            pushedBack = -1;
+            return c;
+        }
+        return reader.read();
+    }
+
+    /**
+     * @return next character of the document without consuming it, or -1 at the end
+     * @throws IOException
+     */
+    private int peek() throws IOException {
+        if(pushedBack == -1){
+            pushedBack = reader.read();
+        }
+        return pushedBack;
+    }
+}
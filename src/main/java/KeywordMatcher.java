@@ -0,0 +1,239 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * KeywordMatcher is an Aho-Corasick automaton that finds every occurrence
+ * of a set of keywords in a single pass over the text. Regex and wildcard
+ * keywords are compiled into a PatternMatcher that runs in the same pass
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class KeywordMatcher {
+
+    public static final int ROOT = 0;
+
+    private final List<String> keywords;
+    private final PatternMatcher patterns;
+    private char[][] labels;
+    private int[][] targets;
+    private int[] fail;
+    private int[] output;
+    private int[] outputLink;
+    private int nodeCount;
+
+    /**
+     * Constructor for the KeywordMatcher class
+     *
+     * @param keywords list of keywords to build the automaton from
+     */
+    public KeywordMatcher(List<String> keywords){
+        this.keywords = new ArrayList<>(keywords);
+        labels = new char[16][];
+        targets = new int[16][];
+        output = new int[16];
+        nodeCount = 1;
+        labels[ROOT] = new char[0];
+        targets[ROOT] = new int[0];
+        output[ROOT] = -1;
+        boolean hasPatterns = false;
+        for (int i = 0; i < this.keywords.size(); i++) {
+            if(PatternMatcher.isPattern(this.keywords.get(i))){
+                hasPatterns = true;
+            }
+            else{
+                insert(this.keywords.get(i), i);
+            }
+        }
+        buildLinks();
+        patterns = hasPatterns ? new PatternMatcher(this.keywords) : null;
+    }
+
+    /**
+     * Add a keyword to the trie
+     *
+     * @param keyword to add
+     * @param index of the keyword in the keyword list
+     */
+    private void insert(String keyword, int index){
+        if(keyword.isEmpty()){
+            return; //an empty keyword would match at every position
+        }
+        int node = ROOT;
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            int child = child(node, c);
+            if(child == -1){
+                child = addNode();
+                addEdge(node, c, child);
+            }
+            node = child;
+        }
+        if(output[node] == -1){ //keep the first index if the keyword is duplicated
+            output[node] = index;
+        }
+    }
+
+    /**
+     * Allocate a new trie node
+     *
+     * @return index of the new node
+     */
+    private int addNode(){
+        if(nodeCount == labels.length){
+            int capacity = nodeCount * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            output = Arrays.copyOf(output, capacity);
+        }
+        labels[nodeCount] = new char[0];
+        targets[nodeCount] = new int[0];
+        output[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+    /**
+     * Add an edge to the sorted edge arrays of a node
+     *
+     * @param node parent node
+     * @param c edge label
+     * @param child target node
+     */
+    private void addEdge(int node, char c, int child){
+        char[] nodeLabels = labels[node];
+        int[] nodeTargets = targets[node];
+        int position = -(Arrays.binarySearch(nodeLabels, c) + 1);
+        char[] newLabels = new char[nodeLabels.length + 1];
+        int[] newTargets = new int[nodeTargets.length + 1];
+        System.arraycopy(nodeLabels, 0, newLabels, 0, position);
+        System.arraycopy(nodeTargets, 0, newTargets, 0, position);
+        newLabels[position] = c;
+        newTargets[position] = child;
+        System.arraycopy(nodeLabels, position, newLabels, position + 1, nodeLabels.length - position);
+        System.arraycopy(nodeTargets, position, newTargets, position + 1, nodeTargets.length - position);
+        labels[node] = newLabels;
+        targets[node] = newTargets;
+    }
+
+    /**
+     * Find the child of a node reachable by a character
+     *
+     * @param node parent node
+     * @param c edge label
+     * @return child node or -1 if there is no such edge
+     */
+    private int child(int node, char c){
+        int position = Arrays.binarySearch(labels[node], c);
+        return position < 0 ? -1 : targets[node][position];
+    }
+
+    /**
+     * Compute the failure and output links with a breadth-first traversal
+     */
+    private void buildLinks(){
+        fail = new int[nodeCount];
+        outputLink = new int[nodeCount];
+        outputLink[ROOT] = -1;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            outputLink[child] = -1;
+            queue.add(child);
+        }
+        while(!queue.isEmpty()){
+            int node = queue.poll();
+            for (int i = 0; i < labels[node].length; i++) {
+                char c = labels[node][i];
+                int child = targets[node][i];
+                int state = fail[node];
+                while(state != ROOT && child(state, c) == -1){
+                    state = fail[state];
+                }
+                int target = child(state, c);
+                fail[child] = target == -1 ? ROOT : target;
+                outputLink[child] = output[fail[child]] != -1 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Advance the automaton by one character
+     *
+     * @param state current state
+     * @param c next character of the text
+     * @return new state
+     */
+    public int next(int state, char c){
+        while(true){
+            int child = child(state, c);
+            if(child != -1){
+                return child;
+            }
+            if(state == ROOT){
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Get the first node with a keyword ending at the given state
+     *
+     * @param state current state
+     * @return node with a match or -1 if there is none
+     */
+    public int firstMatch(int state){
+        return output[state] != -1 ? state : outputLink[state];
+    }
+
+    /**
+     * Get the next node with a keyword ending at the same position
+     *
+     * @param match node returned by firstMatch or nextMatch
+     * @return node with a match or -1 if there is none
+     */
+    public int nextMatch(int match){
+        return outputLink[match];
+    }
+
+    /**
+     * Get the index of the keyword that ends at a match node
+     *
+     * @param match node returned by firstMatch or nextMatch
+     * @return keyword index
+     */
+    public int keywordIndex(int match){
+        return output[match];
+    }
+
+    /**
+     * Get a keyword by its index
+     *
+     * @param index of the keyword
+     * @return keyword
+     */
+    public String getKeyword(int index){
+        return keywords.get(index);
+    }
+
+    /**
+     * @return matcher of the regex and wildcard keywords or null if there are none
+     */
+    public PatternMatcher getPatterns(){ return patterns; }
+
+    /**
+     * @param index of the keyword
+     * @return true if the keyword is a pattern, not matched by the automaton
+     */
+    public boolean isPattern(int index){
+        return patterns != null && PatternMatcher.isPattern(keywords.get(index));
+    }
+
+    /**
+     * @return number of keywords the automaton was built from
+     */
+    public int size(){ return keywords.size(); }
+}
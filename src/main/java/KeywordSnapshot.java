@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KeywordSnapshot is an immutable version of the keywords of a URL. An edit
+ * creates a new snapshot with a new version instead of changing the list,
+ * so the checkers can read the keywords without locking and tell from the
+ * version alone whether they have changed
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public final class KeywordSnapshot {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final List<String> keywords;
+    private final long version;
+
+    /**
+     * Constructor for the KeywordSnapshot class
+     *
+     * @param keywords to copy into the snapshot
+     */
+    public KeywordSnapshot(List<String> keywords){
+        this.keywords = Collections.unmodifiableList(new ArrayList<>(keywords));
+        version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * @param keyword to add
+     * @return new snapshot with the keyword appended
+     */
+    public KeywordSnapshot with(String keyword){
+        List<String> copy = new ArrayList<>(keywords);
+        copy.add(keyword);
+        return new KeywordSnapshot(copy);
+    }
+
+    /**
+     * @param keyword to remove
+     * @return new snapshot without the first occurrence of the keyword
+     */
+    public KeywordSnapshot without(String keyword){
+        List<String> copy = new ArrayList<>(keywords);
+        copy.remove(keyword);
+        return new KeywordSnapshot(copy);
+    }
+
+    /**
+     * @return read-only list of the keywords
+     */
+    public List<String> getKeywords(){ return keywords; }
+
+    /**
+     * @return version of the snapshot, unique across all snapshots
+     */
+    public long getVersion(){ return version; }
+}
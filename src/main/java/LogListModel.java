@@ -0,0 +1,57 @@
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read-only observable view of the match log for the logView. The ListView
+ * only asks for the rows it displays, so the log is never copied and the
+ * paged out entries are read only when they are scrolled into view
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class LogListModel extends ObservableListBase<String> {
+
+    private final DataManager dataManager;
+
+    /**
+     * Constructor for the LogListModel class
+     *
+     * @param dataManager that holds the log
+     */
+    public LogListModel(DataManager dataManager){
+        this.dataManager = dataManager;
+    }
+
+    @Override
+    public String get(int index) {
+        return dataManager.getLogEntry(index);
+    }
+
+    @Override
+    public int size() {
+        return dataManager.getLogCount();
+    }
+
+    /**
+     * Notify the view about entries appended to the log
+     *
+     * @param count number of appended entries
+     */
+    public void entriesAdded(int count){
+        int size = size();
+        beginChange();
+        nextAdd(size - count, size);
+        endChange();
+    }
+
+    /**
+     * Notify the view about a removed entry
+     *
+     * @param index the entry had
+     * @param entry that was removed
+     */
+    public void entryRemoved(int index, String entry){
+        beginChange();
+        nextRemove(index, entry);
+        endChange();
+    }
+}
@@ -0,0 +1,543 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * LogStore holds the match log. The most recent entries are kept in a
+ * bounded ring in memory, older entries are paged out to a segment file and
+ * read back only when they are accessed. Every entry gets a stable ID that
+ * deletes it without searching, and a Fenwick tree over the live entries
+ * translates between list indexes and IDs in logarithmic time. Once more
+ * entries have been removed than are left, the removed ones are dropped from
+ * the index and the segment file, so both grow with the live entries only
+ *
+ * The store is not thread safe, the DataManager guards it with its monitor.
+ * The segment file is a cache, the entries are persisted by the SaveManager
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class LogStore extends AbstractList<String> implements Closeable {
+
+    private final int memoryCapacity;
+    private final String[] ring;
+    private long nextId;
+    private int appended;
+    private int paged;
+    private long[] ids;
+    private long[] offsets;
+    private BitSet removed;
+    private int[] tree;
+    private int liveCount;
+    private Path segmentPath;
+    private DataOutputStream segmentOutput;
+    private RandomAccessFile segmentInput;
+    private long segmentLength;
+
+    /**
+     * Constructor for the LogStore class
+     *
+     * @param memoryCapacity number of recent entries kept in memory
+     */
+    public LogStore(int memoryCapacity){
+        this.memoryCapacity = Math.max(1, memoryCapacity);
+        ring = new String[this.memoryCapacity];
+        reset();
+    }
+
+    /**
+     * Forget all of the entries, keeping the IDs unique
+     */
+    private void reset(){
+        appended = 0;
+        paged = 0;
+        liveCount = 0;
+        ids = new long[16];
+        offsets = new long[16];
+        removed = new BitSet();
+        tree = new int[17];
+        Arrays.fill(ring, null);
+    }
+
+    /**
+     * Append an entry to the log
+     *
+     * @param entry to add
+     * @return always true
+     */
+    @Override
+    public boolean add(String entry){
+        if(appended - paged == memoryCapacity){
+            pageOut();
+        }
+        if(appended + 1 >= tree.length){
+            grow();
+        }
+        ring[appended % memoryCapacity] = entry;
+        ids[appended] = nextId++;
+        appended++;
+        liveCount++;
+        update(appended - 1, 1);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Get an entry by its index in the log
+     *
+     * @param index of the entry among the live entries
+     * @return entry
+     */
+    @Override
+    public String get(int index){
+        return read(position(index));
+    }
+
+    /**
+     * @return number of entries in the log
+     */
+    @Override
+    public int size(){
+        return liveCount;
+    }
+
+    /**
+     * Remove an entry by its index in the log
+     *
+     * @param index of the entry among the live entries
+     * @return removed entry
+     */
+    @Override
+    public String remove(int index){
+        int position = position(index);
+        String entry = read(position);
+        delete(position);
+        return entry;
+    }
+
+    /**
+     * Remove all of the entries
+     */
+    @Override
+    public void clear(){
+        reset();
+        closeSegment();
+        modCount++;
+    }
+
+    /**
+     * Get the stable ID of an entry
+     *
+     * @param index of the entry among the live entries
+     * @return ID of the entry
+     */
+    public long getId(int index){
+        return ids[position(index)];
+    }
+
+    /**
+     * Get the index of an entry in the log
+     *
+     * @param id of the entry
+     * @return index among the live entries or -1 if there is no such entry
+     */
+    public int indexOfId(long id){
+        int position = positionOfId(id);
+        return position == -1 ? -1 : prefixSum(position) - 1;
+    }
+
+    /**
+     * Remove an entry by its ID
+     *
+     * @param id of the entry
+     * @return true if the entry was removed
+     */
+    public boolean removeById(long id){
+        int position = positionOfId(id);
+        if(position == -1){
+            return false;
+        }
+        delete(position);
+        return true;
+    }
+
+    /**
+     * Remove the first entry equal to the given one
+     *
+     * @param entry to remove
+     * @return true if an entry was removed
+     */
+    @Override
+    public boolean remove(Object entry){
+        int index = indexOf(entry);
+        if(index == -1){
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    /**
+     * Find the first entry equal to the given one, reading the log sequentially
+     *
+     * @param entry to look for
+     * @return index of the entry or -1
+     */
+    @Override
+    public int indexOf(Object entry){
+        int index = 0;
+        for (String current: this) {
+            if(current.equals(entry)){
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * Iterate over the entries in order, reading the paged out entries
+     * sequentially from the segment file. The log must not be modified
+     * during the iteration
+     *
+     * @return iterator over the entries
+     */
+    @Override
+    public Iterator<String> iterator(){
+        flushSegment();
+        return new Iterator<String>() {
+
+            private int position = removed.nextClearBit(0);
+            private CountingInputStream counter;
+            private DataInputStream segment;
+
+            @Override
+            public boolean hasNext() {
+                if(position < appended){
+                    return true;
+                }
+                closeReader();
+                return false;
+            }
+
+            @Override
+            public String next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                String entry = position >= paged ? ring[position % memoryCapacity] : readSequentially(offsets[position]);
+                position = removed.nextClearBit(position + 1);
+                return entry;
+            }
+
+            /**
+             * @param offset of the entry in the segment file, after the previously read one
+             * @return entry
+             */
+            private String readSequentially(long offset){
+                try{
+                    if(segment == null){
+                        counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(segmentPath), 1 << 16));
+                        segment = new DataInputStream(counter);
+                    }
+                    while(counter.getCount() < offset){ //skip the entries removed after they were paged out
+                        segment.readFully(new byte[segment.readUnsignedShort()]);
+                    }
+                    return segment.readUTF();
+                }
+                catch (IOException e){
+                    throw new UncheckedIOException("Unable to read the log", e);
+                }
+            }
+
+            private void closeReader(){
+                if(segment != null){
+                    try{
+                        segment.close();
+                    }
+                    catch (IOException e){
+                        //only read from
+                    }
+                    segment = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Delete the segment file
+     */
+    @Override
+    public void close(){
+        closeSegment();
+    }
+
+    /**
+     * Mark a position as removed
+     *
+     * @param position of a live entry
+     */
+    private void delete(int position){
+        removed.set(position);
+        if(position >= paged){
+            ring[position % memoryCapacity] = null;
+        }
+        liveCount--;
+        update(position, -1);
+        modCount++;
+        if(appended - liveCount > Math.max(liveCount, 16)){
+            compact();
+        }
+    }
+
+    /**
+     * @param id of an entry
+     * @return position of the live entry with the ID or -1
+     */
+    private int positionOfId(long id){
+        int position = Arrays.binarySearch(ids, 0, appended, id); //the IDs increase with the position
+        if(position < 0 || removed.get(position)){
+            return -1;
+        }
+        return position;
+    }
+
+    /**
+     * Find the position of the live entry with the given index
+     *
+     * @param index among the live entries
+     * @return position among all of the appended entries
+     */
+    private int position(int index){
+        if(index < 0 || index >= liveCount){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + liveCount);
+        }
+        int position = 0;
+        int remaining = index + 1;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = position + step;
+            if(next < tree.length && tree[next] < remaining){
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position; //the tree is 1-based, so this is the 0-based position of the entry
+    }
+
+    /**
+     * @param position of an entry
+     * @return number of live entries up to and including the position
+     */
+    private int prefixSum(int position){
+        int sum = 0;
+        for (int i = position + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param position of an entry
+     * @param delta to add to the live count of the position
+     */
+    private void update(int position, int delta){
+        for (int i = position + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Double the capacity of the Fenwick tree and the offset index
+     */
+    private void grow(){
+        int capacity = (tree.length - 1) * 2;
+        buildTree(capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+    }
+
+    /**
+     * Build the Fenwick tree from the live positions in linear time
+     *
+     * @param capacity number of positions the tree covers, a power of two
+     */
+    private void buildTree(int capacity){
+        tree = new int[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            if(i <= appended && !removed.get(i - 1)){
+                tree[i]++;
+            }
+            int parent = i + (i & -i);
+            if(parent <= capacity){
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Drop the removed positions from the index, the ring and the segment
+     * file, keeping the IDs of the live entries
+     */
+    private void compact(){
+        int capacity = Math.max(16, Integer.highestOneBit(liveCount) * 2);
+        long[] liveIds = new long[capacity];
+        long[] liveOffsets = new long[capacity];
+        String[] recent = new String[memoryCapacity];
+        int livePaged = 0;
+        int position = 0;
+        DataOutputStream oldOutput = segmentOutput;
+        RandomAccessFile oldInput = segmentInput;
+        Path oldPath = segmentPath;
+        try{
+            flushSegment();
+            segmentOutput = null;
+            for (int i = removed.nextClearBit(0); i < appended; i = removed.nextClearBit(i + 1)) {
+                liveIds[position] = ids[i];
+                if(i < paged){ //copy the live part of the segment file to a new one
+                    oldInput.seek(offsets[i]);
+                    liveOffsets[position] = writeToSegment(oldInput.readUTF());
+                    livePaged++;
+                }
+                else{
+                    recent[position - livePaged] = ring[i % memoryCapacity];
+                }
+                position++;
+            }
+            if(oldOutput != null){
+                oldOutput.close();
+                oldInput.close();
+                Files.deleteIfExists(oldPath);
+            }
+        }
+        catch (IOException e){
+            throw new UncheckedIOException("Unable to compact the log", e);
+        }
+        Arrays.fill(ring, null);
+        for (int i = 0; i < position - livePaged; i++) {
+            ring[(livePaged + i) % memoryCapacity] = recent[i];
+        }
+        ids = liveIds;
+        offsets = liveOffsets;
+        appended = position;
+        paged = livePaged;
+        removed = new BitSet();
+        buildTree(capacity);
+    }
+
+    /**
+     * Move the oldest entry in memory to the segment file
+     */
+    private void pageOut(){
+        int index = paged % memoryCapacity;
+        String entry = ring[index];
+        ring[index] = null;
+        if(entry == null){ //removed while in memory
+            offsets[paged] = -1;
+        }
+        else{
+            try{
+                offsets[paged] = writeToSegment(entry);
+            }
+            catch (IOException e){
+                throw new UncheckedIOException("Unable to page out the log", e);
+            }
+        }
+        paged++;
+    }
+
+    /**
+     * Append an entry to the segment file, creating it if needed
+     *
+     * @param entry to write
+     * @return offset of the entry in the segment file
+     * @throws IOException
+     */
+    private long writeToSegment(String entry) throws IOException {
+        if(segmentOutput == null){
+            openSegment();
+        }
+        long offset = segmentLength;
+        int before = segmentOutput.size();
+        segmentOutput.writeUTF(entry);
+        segmentLength += segmentOutput.size() - before;
+        return offset;
+    }
+
+    /**
+     * Read an entry from memory or from the segment file
+     *
+     * @param position of the entry
+     * @return entry
+     */
+    private String read(int position){
+        if(position >= paged){
+            return ring[position % memoryCapacity];
+        }
+        try{
+            flushSegment();
+            segmentInput.seek(offsets[position]);
+            return segmentInput.readUTF();
+        }
+        catch (IOException e){
+            throw new UncheckedIOException("Unable to read the log", e);
+        }
+    }
+
+    /**
+     * Create the segment file
+     *
+     * @throws IOException
+     */
+    private void openSegment() throws IOException {
+        segmentPath = Files.createTempFile("urlspy-log", ".segment");
+        segmentPath.toFile().deleteOnExit();
+        segmentOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segmentPath.toFile()), 1 << 16));
+        segmentInput = new RandomAccessFile(segmentPath.toFile(), "r");
+        segmentLength = 0;
+    }
+
+    /**
+     * Write the buffered entries to the segment file, so they can be read back
+     */
+    private void flushSegment(){
+        if(segmentOutput != null){
+            try{
+                segmentOutput.flush();
+            }
+            catch (IOException e){
+                throw new UncheckedIOException("Unable to page out the log", e);
+            }
+        }
+    }
+
+    /**
+     * Close and delete the segment file
+     */
+    private void closeSegment(){
+        if(segmentOutput != null){
+            try{
+                segmentOutput.close();
+                segmentInput.close();
+                Files.deleteIfExists(segmentPath);
+            }
+            catch (IOException e){
+                System.out.println("Unable to delete the log segment " + segmentPath);
+            }
+            segmentOutput = null;
+            segmentInput = null;
+        }
+    }
+}
@@ -21,6 +21,12 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.prefs.Preferences;
 
 
@@ -31,7 +37,7 @@ import java.util.prefs.Preferences;
  * @version 0.4
  * @author Albert Shakirzianov
  */
-public class Main extends Application {
+public class Main extends Application implements MatchSink {
 
     private Stage stage;
     private GUIController controller;
@@ -41,6 +47,7 @@ public class Main extends Application {
     private TrayIcon trayIcon;
     private FileChooser fileChooser;
     private Preferences preferences;
+    private final ConcurrentLinkedQueue<MatchEvent> unlogged = new ConcurrentLinkedQueue<>();
 
     public static void main(String[] args) {
         launch(args);
@@ -63,11 +70,15 @@ public class Main extends Application {
             errorNotification("Application start failed");
         }
 
-        dataManager = new DataManager(this);
+        Settings settings = new Settings();
+        SharedHttpClient.configureKeepAlive(settings); //before the first connection is opened
+        dataManager = new DataManager(settings);
+        dataManager.addSink(this);
         dataManager.load();
         controller = controllerLoader.getController();
         threadMonitor = new ThreadMonitor(dataManager);
         fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("URL Spy files (*.urlspy)", "*.urlspy"));
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Text files (*.txt)", "*.txt"));
         preferences = Preferences.userNodeForPackage(Main.class);
 
@@ -121,9 +132,53 @@ public class Main extends Application {
         controller.getSaveMenuItem().setOnAction(e -> handleSave());
         controller.getSaveAsMenuItem().setOnAction(e -> handleSaveAs());
         controller.getOpenMenuItem().setOnAction(e -> handleOpen());
+        controller.getImportMenuItem().setOnAction(e -> handleImport());
         controller.getBugMenuItem().setOnAction(e -> dataManager.openInBrowser("https://github.com/SV-Albert/URL_Spy/issues/new"));
     }
 
+    /**
+     * Pass a match found by the checkers over to the JavaFX thread
+     *
+     * @param url of the website were match occurred
+     * @param keyword on which the match occurred
+     */
+    @Override
+    public void matchFound(String url, String keyword){
+        unlogged.add(new MatchEvent(url, keyword)); //logged by quit if the JavaFX thread never gets to it
+        Platform.runLater(() -> matchNotification(url, keyword));
+    }
+
+    /**
+     * Pass an error over to the JavaFX thread
+     *
+     * @param message to display
+     */
+    @Override
+    public void error(String message){
+        Platform.runLater(() -> errorNotification(message));
+    }
+
+    /**
+     * Pass a batch of matches over to the JavaFX thread in one go
+     *
+     * @param matches grouped by URL and keyword
+     */
+    @Override
+    public void matchesFound(List<MatchEvent> matches){
+        unlogged.addAll(matches); //logged by quit if the JavaFX thread never gets to it
+        Platform.runLater(() -> matchNotification(matches));
+    }
+
+    /**
+     * Pass a batch of errors over to the JavaFX thread as one notification
+     *
+     * @param messages of the errors
+     */
+    @Override
+    public void errorsOccurred(List<String> messages){
+        Platform.runLater(() -> errorNotification(String.join("\n", messages)));
+    }
+
     /**
      * Create a success notification when a match was found
      *
@@ -131,10 +186,52 @@ public class Main extends Application {
      * @param keyword on which the match occurred
      */
     public void matchNotification(String url, String keyword){
-        controller.addLogEntry(url, keyword);
+        logMatches();
+        showMatchNotification(url, url + ": " + keyword);
+    }
+
+    /**
+     * Create a single success notification for a batch of matches
+     *
+     * @param matches grouped by URL and keyword
+     */
+    public void matchNotification(List<MatchEvent> matches){
+        logMatches();
+        MatchEvent first = matches.get(0);
+        if(matches.size() == 1){
+            showMatchNotification(first.getUrl(), first.getUrl() + ": " + first.getKeyword());
+        }
+        else{
+            showMatchNotification(first.getUrl(), first.getUrl() + ": " + first.getKeyword() +
+                    " and " + (matches.size() - 1) + " more");
+        }
+    }
+
+    /**
+     * Add the matches that have not been logged yet to the log, on the
+     * JavaFX thread
+     */
+    private void logMatches(){
+        List<MatchEvent> matches = new ArrayList<>();
+        MatchEvent match;
+        while((match = unlogged.poll()) != null){
+            matches.add(match);
+        }
+        if(!matches.isEmpty()){
+            controller.addLogEntries(matches);
+        }
+    }
+
+    /**
+     * Display a success notification
+     *
+     * @param url opened when the notification is clicked
+     * @param text of the notification
+     */
+    private void showMatchNotification(String url, String text){
         if(System.getProperty("os.name").contains("Mac")){
             try{
-                Runtime.getRuntime().exec(new String[] {"osascript", "-e", "display notification \"" + url + ": " + keyword +
+                Runtime.getRuntime().exec(new String[] {"osascript", "-e", "display notification \"" + text +
                         "\"" + " with title \"" + "Match found!" + "\""});
             }
             catch(IOException e){
@@ -145,7 +242,7 @@ public class Main extends Application {
             SwingUtilities.invokeLater(() ->
                     trayIcon.displayMessage(
                             "Match found",
-                            url + ": " + keyword,
+                            text,
                             TrayIcon.MessageType.INFO
                     )
             );
@@ -155,7 +252,7 @@ public class Main extends Application {
                 .onAction(e -> dataManager.openInBrowser(url))
                 .position(Pos.BOTTOM_RIGHT)
                 .title("Match found")
-                .text(url + ": " + keyword)
+                .text(text)
                 .hideAfter(Duration.seconds(10))
                 .showInformation();
         }
@@ -199,6 +296,9 @@ public class Main extends Application {
      * Stop the application
      */
     private void quit(){
+        threadMonitor.shutdown();
+        dataManager.closeNotifications();
+        logMatches(); //the last batch is posted to the JavaFX thread, which does not get to it before the exit
         dataManager.save();
         if(!System.getProperty("os.name").contains("Mac") && SystemTray.isSupported()){
             SystemTray.getSystemTray().remove(trayIcon);
@@ -315,7 +415,7 @@ public class Main extends Application {
      */
     private void handleOpen(){
         File saveFile = fileChooser.showOpenDialog(stage);
-        if(saveFile != null && saveFile.getPath().endsWith(".txt")){
+        if(saveFile != null && (saveFile.getPath().endsWith(".urlspy") || saveFile.getPath().endsWith(".txt"))){
             dataManager.getSaveManager().setPathToSave(saveFile.toPath());
             dataManager.load();
             preferences.put("pathToLastSave", saveFile.getPath());
@@ -323,4 +423,22 @@ public class Main extends Application {
             setStageTitle();
         }
     }
+
+    /**
+     * Import the URLs listed in a text file, one or more per line
+     */
+    private void handleImport(){
+        FileChooser importChooser = new FileChooser();
+        importChooser.setTitle("Import URLs");
+        importChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Text files (*.txt)", "*.txt", "*.csv"));
+        File listFile = importChooser.showOpenDialog(stage);
+        if(listFile != null){
+            try (Reader reader = Files.newBufferedReader(listFile.toPath(), StandardCharsets.UTF_8)) {
+                controller.importUrls(URLImporter.readList(reader));
+            }
+            catch (IOException e){
+                dataManager.error("Unable to read " + listFile.getName());
+            }
+        }
+    }
 }
@@ -0,0 +1,41 @@
+/**
+ * MatchEvent describes the matches of a keyword on a URL that were
+ * grouped into a single notification
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class MatchEvent {
+
+    private final String url;
+    private final String keyword;
+    private int count;
+
+    /**
+     * Constructor for the MatchEvent class
+     *
+     * @param url where the match was found
+     * @param keyword on which the match was found
+     */
+    public MatchEvent(String url, String keyword){
+        this.url = url;
+        this.keyword = keyword;
+        count = 1;
+    }
+
+    /**
+     * Count one more match of the same keyword on the same URL
+     */
+    void increment(){
+        count++;
+    }
+
+    public String getUrl(){ return url; }
+
+    public String getKeyword(){ return keyword; }
+
+    /**
+     * @return number of matches grouped into this event
+     */
+    public int getCount(){ return count; }
+}
@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.PriorityQueue;
+
+/**
+ * MatchScanner runs a KeywordMatcher over text that is fed to it one
+ * character at a time and reports every keyword occurrence together with
+ * the 100 character window that starts at it. The pattern keywords are
+ * searched in the same pass. Only the characters that can still belong to
+ * a window or a pattern match are buffered, so the memory use does not
+ * depend on the length of the text
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class MatchScanner {
+
+    public static final int WINDOW_LENGTH = 100;
+    private static final int TRIM_THRESHOLD = 4096;
+
+    /**
+     * Receives the keyword occurrences found by the scanner
+     */
+    public interface OccurrenceHandler {
+
+        /**
+         * @param keywordIndex index of the matched keyword in the matcher
+         * @param index of the first character of the occurrence in the text
+         * @param window text starting at the occurrence
+         */
+        void occurrence(int keywordIndex, int index, String window);
+    }
+
+    private final KeywordMatcher matcher;
+    private final OccurrenceHandler handler;
+    private final int[] nextIndex;
+    private final int maxKeywordLength;
+    private final PatternMatcher.Search patternSearch;
+    private final StringBuilder buffer;
+    private final PriorityQueue<int[]> pending;
+    private int bufferStart;
+    private int position;
+    private int state;
+    private long digest;
+
+    /**
+     * Constructor for the MatchScanner class
+     *
+     * @param matcher keyword automaton to run
+     * @param handler to report the occurrences to
+     */
+    public MatchScanner(KeywordMatcher matcher, OccurrenceHandler handler){
+        this.matcher = matcher;
+        this.handler = handler;
+        nextIndex = new int[matcher.size()]; //first index each keyword may match at, so occurrences don't overlap
+        int maxLength = 0;
+        for (int i = 0; i < matcher.size(); i++) {
+            if(!matcher.isPattern(i)){
+                maxLength = Math.max(maxLength, matcher.getKeyword(i).length());
+            }
+        }
+        PatternMatcher patterns = matcher.getPatterns();
+        if(patterns != null && patterns.size() > 0){
+            patternSearch = patterns.newSearch(this::patternMatch);
+            maxLength = Math.max(maxLength, PatternMatcher.MAX_MATCH_LENGTH); //a pattern match can start that far back
+        }
+        else{
+            patternSearch = null;
+        }
+        maxKeywordLength = maxLength;
+        buffer = new StringBuilder();
+        pending = new PriorityQueue<>((a, b) -> Integer.compare(a[1], b[1])); //ordered by the start of the occurrence
+        state = KeywordMatcher.ROOT;
+        digest = 0xcbf29ce484222325L;
+    }
+
+    /**
+     * Feed a sequence of characters to the scanner
+     *
+     * @param text to scan
+     */
+    public void feed(CharSequence text){
+        for (int i = 0; i < text.length(); i++) {
+            feed(text.charAt(i));
+        }
+    }
+
+    /**
+     * Feed the visible text of an HTML document to the scanner as it is read
+     *
+     * @param html reader of the HTML document, should be buffered
+     * @throws IOException
+     */
+    public void feedHtml(Reader html) throws IOException {
+        HtmlTextReader reader = new HtmlTextReader(html);
+        int c;
+        while((c = reader.read()) != -1){
+            feed((char) c);
+        }
+    }
+
+    /**
+     * Feed the next character of the text to the scanner, the matching
+     * is case insensitive
+     *
+     * @param c next character
+     */
+    public void feed(char c){
+        c = Character.toLowerCase(c);
+        digest = (digest ^ c) * 0x100000001b3L;
+        buffer.append(c);
+        position++;
+        while(!pending.isEmpty() && pending.peek()[1] + WINDOW_LENGTH < position){ //the window is complete
+            int[] occurrence = pending.poll();
+            report(occurrence, occurrence[1] + WINDOW_LENGTH);
+        }
+        state = matcher.next(state, c);
+        for (int match = matcher.firstMatch(state); match != -1; match = matcher.nextMatch(match)) {
+            int keywordIndex = matcher.keywordIndex(match);
+            int index = position - matcher.getKeyword(keywordIndex).length();
+            if(index >= nextIndex[keywordIndex]){
+                nextIndex[keywordIndex] = index + matcher.getKeyword(keywordIndex).length();
+                pending.add(new int[]{keywordIndex, index});
+            }
+        }
+        if(patternSearch != null){
+            patternSearch.feed(c);
+        }
+        trim();
+    }
+
+    /**
+     * Queue a pattern match, the pattern search keeps the matches of a
+     * keyword from overlapping
+     *
+     * @param keywordIndex index of the matched keyword
+     * @param start index of the first character of the match
+     * @param end index after the last character of the match
+     */
+    private void patternMatch(int keywordIndex, int start, int end){
+        pending.add(new int[]{keywordIndex, start});
+    }
+
+    /**
+     * Report the occurrences whose windows reach the end of the text
+     */
+    public void finish(){
+        if(patternSearch != null){
+            patternSearch.finish();
+        }
+        while(!pending.isEmpty()){
+            report(pending.poll(), position - 1);
+        }
+    }
+
+    /**
+     * Get a digest of all of the text fed to the scanner, to tell whether
+     * the text changed between two checks. It is a hash of the lowercased
+     * text and cannot be compared with FingerprintSet.fingerprint
+     *
+     * @return 64-bit digest of the lowercased text
+     */
+    public long getDigest(){
+        long hash = digest;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Pass an occurrence and its window to the handler
+     *
+     * @param occurrence keyword index and text index
+     * @param end index of the end of the window, exclusive
+     */
+    private void report(int[] occurrence, int end){
+        String window = buffer.substring(occurrence[1] - bufferStart, Math.max(end, occurrence[1]) - bufferStart);
+        handler.occurrence(occurrence[0], occurrence[1], window);
+    }
+
+    /**
+     * Drop the characters that can no longer be part of a window
+     */
+    private void trim(){
+        if(buffer.length() > TRIM_THRESHOLD){
+            int keep = pending.isEmpty() ? position - maxKeywordLength : Math.min(pending.peek()[1], position - maxKeywordLength);
+            if(keep > bufferStart){
+                buffer.delete(0, keep - bufferStart);
+                bufferStart = keep;
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.List;
+
+/**
+ * MatchSink receives the match and error notifications produced
+ * by the checkers. The notifications are delivered in batches from a single
+ * thread, sinks that can handle a whole batch at once override the batch
+ * methods
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public interface MatchSink {
+
+    /**
+     * Called when a match has been found
+     *
+     * @param url of the website were match occurred
+     * @param keyword on which the match occurred
+     */
+    void matchFound(String url, String keyword);
+
+    /**
+     * Called when an error has occurred
+     *
+     * @param message describing the error
+     */
+    void error(String message);
+
+    /**
+     * Called with a batch of matches, passes each of them to matchFound
+     * unless overridden
+     *
+     * @param matches found within the same batch window
+     */
+    default void matchesFound(List<MatchEvent> matches){
+        for (MatchEvent match: matches) {
+            matchFound(match.getUrl(), match.getKeyword());
+        }
+    }
+
+    /**
+     * Called with a batch of errors, passes each of them to error
+     * unless overridden
+     *
+     * @param messages of the errors within the same batch window
+     */
+    default void errorsOccurred(List<String> messages){
+        for (String message: messages) {
+            error(message);
+        }
+    }
+}
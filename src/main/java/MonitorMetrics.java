@@ -0,0 +1,131 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MonitorMetrics owns the per-check and aggregate CheckMetrics and publishes
+ * them as JMX MBeans under the "URLSpy" domain, together with the state of
+ * the CheckScheduler. A check is named by the key of its CheckerThread, the
+ * canonical URL followed by the CSS selector the check is scoped to
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class MonitorMetrics implements MonitorMetricsMBean {
+
+    private final DataManager dataManager;
+    private final CheckScheduler scheduler;
+    private final CheckMetrics aggregate;
+    private final ConcurrentHashMap<String, CheckMetrics> checkMetrics;
+    private final MBeanServer server;
+
+    /**
+     * Constructor for the MonitorMetrics class
+     *
+     * @param dataManager to read the fingerprint count from
+     * @param scheduler to read the scheduler lag from
+     */
+    public MonitorMetrics(DataManager dataManager, CheckScheduler scheduler){
+        this.dataManager = dataManager;
+        this.scheduler = scheduler;
+        aggregate = new CheckMetrics(null);
+        checkMetrics = new ConcurrentHashMap<>();
+        server = ManagementFactory.getPlatformMBeanServer();
+        register(objectName("type=Monitor"), this);
+        register(objectName("type=Check,url=all"), aggregate);
+    }
+
+    /**
+     * Get the metrics of a check, creating and publishing them if needed
+     *
+     * @param checkKey key of the CheckerThread
+     * @return metrics of the check
+     */
+    public CheckMetrics forCheck(String checkKey){
+        return checkMetrics.computeIfAbsent(checkKey, key -> {
+            CheckMetrics metrics = new CheckMetrics(aggregate);
+            register(checkName(key), metrics);
+            return metrics;
+        });
+    }
+
+    /**
+     * Stop publishing the metrics of a check
+     *
+     * @param checkKey key of the CheckerThread
+     */
+    public void remove(String checkKey){
+        if(checkMetrics.remove(checkKey) != null){
+            try{
+                server.unregisterMBean(checkName(checkKey));
+            }
+            catch (JMException e){
+                System.out.println("Unable to unregister the metrics of " + checkKey);
+            }
+        }
+    }
+
+    /**
+     * @return metrics of all of the checks together
+     */
+    public CheckMetrics getAggregate(){ return aggregate; }
+
+    @Override
+    public int getMonitoredUrls() { return checkMetrics.size(); }
+
+    @Override
+    public long getFingerprintCount() { return dataManager.getFingerprintCount(); }
+
+    @Override
+    public int getWaitingChecks() { return scheduler.getWaiting(); }
+
+    @Override
+    public double getSchedulerLagP50Millis() { return scheduler.getLag().percentile(0.5) / 1000.0; }
+
+    @Override
+    public double getSchedulerLagP99Millis() { return scheduler.getLag().percentile(0.99) / 1000.0; }
+
+    @Override
+    public double getSchedulerLagMaxMillis() { return scheduler.getLag().getMax() / 1000.0; }
+
+    /**
+     * @param checkKey key of the CheckerThread
+     * @return JMX name of the metrics of the check
+     */
+    private ObjectName checkName(String checkKey){
+        return objectName("type=Check,url=" + ObjectName.quote(checkKey));
+    }
+
+    /**
+     * @param properties key properties of the name
+     * @return JMX name in the URLSpy domain
+     */
+    private static ObjectName objectName(String properties){
+        try{
+            return new ObjectName("URLSpy:" + properties);
+        }
+        catch (JMException e){
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Publish an MBean, replacing one already registered under the name
+     *
+     * @param name of the MBean
+     * @param mbean to publish
+     */
+    private void register(ObjectName name, Object mbean){
+        try{
+            if(server.isRegistered(name)){
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        }
+        catch (JMException e){
+            System.out.println("Unable to publish the metrics " + name);
+        }
+    }
+}
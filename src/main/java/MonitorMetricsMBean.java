@@ -0,0 +1,20 @@
+/**
+ * JMX interface of the MonitorMetrics class
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public interface MonitorMetricsMBean {
+
+    int getMonitoredUrls();
+
+    long getFingerprintCount();
+
+    int getWaitingChecks();
+
+    double getSchedulerLagP50Millis();
+
+    double getSchedulerLagP99Millis();
+
+    double getSchedulerLagMaxMillis();
+}
@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NotificationQueue decouples the checkers from the notification sinks.
+ * Matches and errors are queued without blocking and a single delivery
+ * thread passes them to the sinks in batches, grouping the matches of the
+ * same keyword on the same URL that arrive within a short window
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class NotificationQueue {
+
+    private static final Object STOP = new Object();
+
+    private final List<MatchSink> sinks;
+    private final long window;
+    private final LinkedBlockingQueue<Object> queue;
+    private final Thread delivery;
+
+    /**
+     * Constructor for the NotificationQueue class
+     *
+     * @param sinks to deliver the batches to
+     * @param window time to collect a batch for after its first notification, in milliseconds
+     */
+    public NotificationQueue(List<MatchSink> sinks, long window){
+        this.sinks = sinks;
+        this.window = window;
+        queue = new LinkedBlockingQueue<>();
+        delivery = new Thread(this::deliver, "notifications");
+        delivery.setDaemon(true);
+        delivery.start();
+    }
+
+    /**
+     * Queue a match
+     *
+     * @param url where the match was found
+     * @param keyword on which the match was found
+     */
+    public void matchFound(String url, String keyword){
+        queue.offer(new MatchEvent(url, keyword));
+    }
+
+    /**
+     * Queue an error
+     *
+     * @param message describing the error
+     */
+    public void error(String message){
+        queue.offer(message);
+    }
+
+    /**
+     * Deliver the queued notifications and stop the delivery thread
+     *
+     * @param timeout to wait for the delivery in milliseconds
+     */
+    public void close(long timeout){
+        queue.offer(STOP);
+        try{
+            delivery.join(timeout);
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the delivery thread, waits for a notification, collects the
+     * ones that follow it within the window and delivers them as a batch
+     */
+    private void deliver(){
+        boolean stopped = false;
+        while(!stopped){
+            LinkedHashMap<String, MatchEvent> matches = new LinkedHashMap<>();
+            List<String> errors = new ArrayList<>();
+            try{
+                Object notification = queue.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(window);
+                while(notification != null){
+                    if(notification == STOP){
+                        stopped = true;
+                        queue.drainTo(new ArrayList<>()); //nothing is queued after close
+                        break;
+                    }
+                    collect(notification, matches, errors);
+                    notification = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            }
+            catch (InterruptedException e){
+                stopped = true;
+            }
+            publish(new ArrayList<>(matches.values()), errors);
+        }
+    }
+
+    /**
+     * Add a notification to the batch, merging a match with the earlier
+     * ones of the same keyword on the same URL
+     *
+     * @param notification MatchEvent or error message
+     * @param matches of the batch by URL and keyword
+     * @param errors of the batch
+     */
+    private static void collect(Object notification, LinkedHashMap<String, MatchEvent> matches, List<String> errors){
+        if(notification instanceof MatchEvent){
+            MatchEvent event = (MatchEvent) notification;
+            MatchEvent previous = matches.putIfAbsent(event.getUrl() + '\n' + event.getKeyword(), event);
+            if(previous != null){
+                previous.increment();
+            }
+        }
+        else if(!errors.contains(notification)){
+            errors.add((String) notification);
+        }
+    }
+
+    /**
+     * Pass a batch to every sink, a failing sink does not stop the others
+     *
+     * @param matches of the batch
+     * @param errors of the batch
+     */
+    private void publish(List<MatchEvent> matches, List<String> errors){
+        for (MatchSink sink: sinks) {
+            try{
+                if(!matches.isEmpty()){
+                    sink.matchesFound(matches);
+                }
+                if(!errors.isEmpty()){
+                    sink.errorsOccurred(errors);
+                }
+            }
+            catch (RuntimeException e){
+                e.printStackTrace();
+            }
+        }
+    }
+}
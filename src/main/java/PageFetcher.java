@@ -0,0 +1,304 @@
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * PageFetcher downloads a page and remembers the validators (ETag and
+ * Last-Modified) of the last response, so that the next download is
+ * skipped by the server if the page has not been modified
+ *
+ * The page is requested with gzip or deflate compression and decompressed
+ * as it is read. Every fetch has a budget: the download is aborted with a
+ * CheckAbortedException when the decompressed page grows past the size
+ * limit or when the fetch runs past its deadline, even if a read is blocked
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class PageFetcher {
+
+    private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog();
+
+    /**
+     * Reads the decoded body of a response
+     */
+    private interface BodyReader<T> {
+
+        /**
+         * @param response the body belongs to
+         * @param body decompressed body within the budget of the fetch
+         * @return result of reading the body
+         * @throws IOException
+         */
+        T read(SharedHttpClient.Response response, InputStream body) throws IOException;
+    }
+
+    private final String url;
+    private final SharedHttpClient client;
+    private final long maxBytes;
+    private final long maxNanos;
+    private String etag;
+    private String lastModified;
+    private String pendingEtag;
+    private String pendingLastModified;
+    private long lastLatency;
+    private CountingInputStream lastBody;
+
+    /**
+     * Constructor for the PageFetcher class
+     *
+     * @param url of the page to fetch
+     * @param client shared HTTP client to fetch the page with
+     * @param maxBytes size of the decompressed page after which a fetch is aborted
+     * @param maxMillis time after which a fetch is aborted
+     */
+    public PageFetcher(String url, SharedHttpClient client, long maxBytes, long maxMillis){
+        this.url = url;
+        this.client = client;
+        this.maxBytes = maxBytes;
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+    /**
+     * @return single daemon thread that aborts the fetches running past their deadline
+     */
+    private static ScheduledThreadPoolExecutor createWatchdog(){
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "fetch-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true); //almost every fetch cancels its abort
+        return executor;
+    }
+
+    /**
+     * Fetch and parse the page, revalidating the previous response
+     * if there is one
+     *
+     * @return parsed page or null if the page has not been modified
+     * @throws IOException
+     */
+    public Document fetch() throws IOException {
+        return fetch((response, body) -> Jsoup.parse(body, response.getCharset(), response.getUrl()));
+    }
+
+    /**
+     * Fetch the page and stream its visible text into a scanner as it
+     * arrives, without building a document
+     *
+     * @param scanner to feed the text to
+     * @return false if the page has not been modified
+     * @throws IOException
+     */
+    public boolean fetchText(MatchScanner scanner) throws IOException {
+        return fetch((response, body) -> {
+            Charset charset = StandardCharsets.UTF_8;
+            try{
+                if(response.getCharset() != null && Charset.isSupported(response.getCharset())){
+                    charset = Charset.forName(response.getCharset());
+                }
+            }
+            catch (IllegalArgumentException e){
+                //malformed charset name, read the page as UTF-8
+            }
+            scanner.feedHtml(new BufferedReader(new InputStreamReader(body, charset)));
+            return Boolean.TRUE;
+        }) != null;
+    }
+
+    /**
+     * Fetch the page within its budget, revalidating the previous response
+     * if there is one. The deadline covers the wait for a connection slot,
+     * the response headers and the body
+     *
+     * @param reader of the decompressed body
+     * @return result of the reader or null if the page has not been modified
+     * @throws IOException
+     */
+    private <T> T fetch(BodyReader<T> reader) throws IOException {
+        long deadline = System.nanoTime() + maxNanos;
+        Watchdog watchdog = new Watchdog();
+        ScheduledFuture<?> abort = WATCHDOG.schedule(watchdog, maxNanos, TimeUnit.NANOSECONDS);
+        try (SharedHttpClient.Response response = open(deadline)) {
+            if(response == null){
+                return null;
+            }
+            watchdog.watch(response);
+            lastBody = new CountingInputStream(response.getBody());
+            InputStream body = decode(lastBody, response.getHeader("Content-Encoding"));
+            T result = reader.read(response, new BudgetInputStream(body, maxBytes, deadline));
+            commitValidators();
+            return result;
+        }
+        catch (IOException | UncheckedIOException e){
+            if(!(e instanceof CheckAbortedException) && (watchdog.isTimedOut()
+                    || (e instanceof SocketTimeoutException && System.nanoTime() - deadline >= 0))){
+                throw new CheckAbortedException("the check took longer than its time budget");
+            }
+            throw e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e;
+        }
+        finally {
+            abort.cancel(false);
+        }
+    }
+
+    /**
+     * Send a request for the page, revalidating the previous response
+     * if there is one, and remember the new validators
+     *
+     * @param deadline System.nanoTime by which the response headers have to arrive
+     * @return response or null if the page has not been modified
+     * @throws IOException
+     */
+    private SharedHttpClient.Response open(long deadline) throws IOException {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept-Encoding", "gzip, deflate");
+        if(etag != null){
+            headers.put("If-None-Match", etag);
+        }
+        if(lastModified != null){
+            headers.put("If-Modified-Since", lastModified);
+        }
+        long start = System.nanoTime();
+        lastBody = null;
+        SharedHttpClient.Response response = client.get(url, headers, deadline);
+        int status = response.getStatus();
+        lastLatency = System.nanoTime() - start;
+        if(status == 304){
+            response.close();
+            return null;
+        }
+        if(status >= 400){
+            response.close();
+            throw new IOException("HTTP error " + status + " fetching " + url);
+        }
+        pendingEtag = response.getHeader("ETag");
+        pendingLastModified = response.getHeader("Last-Modified");
+        return response;
+    }
+
+    /**
+     * Remember the validators of a response once its body was read completely,
+     * so that an aborted download is not skipped as unmodified next time
+     */
+    private void commitValidators(){
+        etag = pendingEtag;
+        lastModified = pendingLastModified;
+    }
+
+    /**
+     * Decompress a body according to its Content-Encoding
+     *
+     * @param body as downloaded
+     * @param encoding value of the Content-Encoding header or null
+     * @return decompressed body
+     * @throws IOException if the encoding is not supported
+     */
+    private static InputStream decode(InputStream body, String encoding) throws IOException {
+        if(encoding == null){
+            return body;
+        }
+        switch (encoding.trim().toLowerCase(Locale.ROOT)){
+            case "":
+            case "identity":
+                return body;
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body, 8192);
+            case "deflate": {
+                BufferedInputStream buffered = new BufferedInputStream(body, 8192);
+                buffered.mark(2);
+                int cmf = buffered.read();
+                int flg = buffered.read();
+                buffered.reset();
+                //servers send either the zlib format the specification asks for or a raw deflate stream
+                boolean zlib = flg != -1 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+                return new InflaterInputStream(buffered, new Inflater(!zlib), 8192) {
+                    @Override
+                    public void close() throws IOException {
+                        try{
+                            super.close();
+                        }
+                        finally {
+                            inf.end(); //a supplied Inflater is not released by InflaterInputStream
+                        }
+                    }
+                };
+            }
+            default:
+                throw new IOException("Unsupported content encoding " + encoding);
+        }
+    }
+
+    /**
+     * @return time until the response headers of the last fetch arrived, in nanoseconds
+     */
+    public long getLastLatency(){ return lastLatency; }
+
+    /**
+     * @return number of body bytes downloaded by the last fetch, before decompression
+     */
+    public long getLastBytes(){
+        return lastBody == null ? 0 : lastBody.getCount();
+    }
+
+    /**
+     * Forget the validators so that the next fetch downloads the full page
+     */
+    public void reset(){
+        etag = null;
+        lastModified = null;
+    }
+
+    /**
+     * Fires at the deadline of a fetch. Until the response headers arrive the
+     * client bounds its own waits by the deadline, afterwards the response is
+     * aborted, which unblocks a read that is waiting for a slow server
+     */
+    private static class Watchdog implements Runnable {
+
+        private SharedHttpClient.Response response;
+        private boolean timedOut;
+
+        @Override
+        synchronized public void run(){
+            timedOut = true;
+            if(response != null){
+                response.abort();
+            }
+        }
+
+        /**
+         * @param response to abort at the deadline, at once if it has passed
+         */
+        synchronized public void watch(SharedHttpClient.Response response){
+            this.response = response;
+            if(timedOut){
+                response.abort();
+            }
+        }
+
+        /**
+         * @return true if the deadline has passed
+         */
+        synchronized public boolean isTimedOut(){ return timedOut; }
+    }
+}
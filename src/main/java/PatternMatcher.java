@@ -0,0 +1,788 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PatternMatcher compiles the regex and wildcard keywords into a single
+ * program and runs it as a Pike VM. Every instruction is simulated at most
+ * once per character of the text, so a scan takes linear time in the length
+ * of the text whatever the patterns look like, and no pattern can make a
+ * checker backtrack. The patterns are run in the same pass as the plain
+ * keywords of the KeywordMatcher
+ *
+ * A keyword starting with "re:" is a regular expression with literals, '.',
+ * character classes with ranges and negation, \d \w \s and their negations,
+ * the \b and \B word boundaries, ^ and $, groups, alternation and the
+ * * + ? {n} {n,} {n,m} quantifiers. Back references and lookaround are not
+ * supported. A keyword starting with "wc:" is a wildcard where '*' stands
+ * for a run of non-space characters, in any other keyword '*' is a literal
+ * character. Matching is case insensitive and a
+ * match can be at most MAX_MATCH_LENGTH characters long
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class PatternMatcher {
+
+    public static final String REGEX_PREFIX = "re:";
+    public static final String WILDCARD_PREFIX = "wc:";
+    public static final int MAX_MATCH_LENGTH = 1000;
+    private static final int MAX_REPEAT = 100;
+    private static final int MAX_PATTERN_SIZE = 5000; //instructions
+
+    private static final byte CHAR = 0;
+    private static final byte ANY = 1;
+    private static final byte CLASS = 2;
+    private static final byte SPLIT = 3;
+    private static final byte JUMP = 4;
+    private static final byte ASSERT = 5;
+    private static final byte MATCH = 6;
+
+    private static final int TEXT_START = 0;
+    private static final int TEXT_END = 1;
+    private static final int WORD_BOUNDARY = 2;
+    private static final int NOT_WORD_BOUNDARY = 3;
+
+    /**
+     * Receives the matches found by a search
+     */
+    public interface MatchHandler {
+
+        /**
+         * @param keywordIndex index of the matched keyword
+         * @param start index of the first character of the match in the text
+         * @param end index after the last character of the match
+         */
+        void match(int keywordIndex, int start, int end);
+    }
+
+    private byte[] ops;
+    private int[] args;
+    private int[] alternatives;
+    private int[] keywordOf;
+    private int size;
+    private final List<CharClass> classes;
+    private final int[] starts;
+    private final int keywordCount;
+    private final List<String> errors;
+
+    /**
+     * Constructor for the PatternMatcher class, keywords that are not
+     * patterns or cannot be compiled are skipped
+     *
+     * @param keywords list of keywords, the matches report indexes into it
+     */
+    public PatternMatcher(List<String> keywords){
+        ops = new byte[64];
+        args = new int[64];
+        alternatives = new int[64];
+        keywordOf = new int[64];
+        classes = new ArrayList<>();
+        errors = new ArrayList<>();
+        keywordCount = keywords.size();
+        int[] patternStarts = new int[keywords.size()];
+        int patternCount = 0;
+        for (int i = 0; i < keywords.size(); i++) {
+            String keyword = keywords.get(i);
+            if(!isPattern(keyword)){
+                continue;
+            }
+            int start = size;
+            try{
+                Node pattern = parse(keyword);
+                if(pattern.nullable()){
+                    throw new IllegalArgumentException("the pattern matches empty text");
+                }
+                compile(pattern, i, start);
+                emit(MATCH, i, 0, i);
+                patternStarts[patternCount++] = start;
+            }
+            catch (IllegalArgumentException e){
+                size = start; //drop the partially compiled pattern
+                errors.add("Invalid keyword pattern \"" + keyword + "\": " + e.getMessage());
+            }
+        }
+        starts = Arrays.copyOf(patternStarts, patternCount);
+    }
+
+    /**
+     * Check if a keyword is a regex or wildcard pattern
+     *
+     * @param keyword to check
+     * @return true if the keyword is matched by a PatternMatcher
+     */
+    public static boolean isPattern(String keyword){
+        return keyword.startsWith(REGEX_PREFIX) || keyword.startsWith(WILDCARD_PREFIX);
+    }
+
+    /**
+     * Check if a pattern keyword can be compiled
+     *
+     * @param keyword to check
+     * @return null if the keyword compiles or is not a pattern, the reason otherwise
+     */
+    public static String validate(String keyword){
+        List<String> errors = new PatternMatcher(Collections.singletonList(keyword)).getErrors();
+        return errors.isEmpty() ? null : errors.get(0);
+    }
+
+    /**
+     * @return number of patterns that were compiled
+     */
+    public int size(){ return starts.length; }
+
+    /**
+     * @return messages of the patterns that could not be compiled
+     */
+    public List<String> getErrors(){ return Collections.unmodifiableList(errors); }
+
+    /**
+     * Start a search over a new text
+     *
+     * @param handler to report the matches to
+     * @return search to feed the text to
+     */
+    public Search newSearch(MatchHandler handler){
+        return new Search(handler);
+    }
+
+    /**
+     * Parse a pattern keyword
+     *
+     * @param keyword regex or wildcard with its prefix
+     * @return syntax tree of the pattern
+     */
+    private static Node parse(String keyword){
+        if(keyword.startsWith(REGEX_PREFIX)){
+            Parser parser = new Parser(keyword.substring(REGEX_PREFIX.length()));
+            Node node = parser.alternation();
+            if(parser.index < parser.pattern.length()){
+                throw new IllegalArgumentException("unmatched ')'");
+            }
+            return node;
+        }
+        Node wildcard = new Node(Node.CONCAT);
+        for (char c: keyword.substring(WILDCARD_PREFIX.length()).toCharArray()) {
+            if(c == '*'){
+                Node word = new Node(Node.REPEAT);
+                CharClass nonSpace = new CharClass();
+                nonSpace.predefined |= CharClass.NOT_SPACE;
+                word.children.add(Node.characterClass(nonSpace));
+                word.max = -1;
+                wildcard.children.add(word);
+            }
+            else{
+                wildcard.children.add(Node.literal(Character.toLowerCase(c)));
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * Compile a syntax tree into instructions
+     *
+     * @param node to compile
+     * @param keywordIndex index of the keyword the instructions belong to
+     * @param patternStart first instruction of the pattern
+     */
+    private void compile(Node node, int keywordIndex, int patternStart){
+        if(size - patternStart > MAX_PATTERN_SIZE){
+            throw new IllegalArgumentException("the pattern is too large");
+        }
+        switch (node.type){
+            case Node.LITERAL:
+                emit(CHAR, node.c, 0, keywordIndex);
+                break;
+            case Node.ANY:
+                emit(ANY, 0, 0, keywordIndex);
+                break;
+            case Node.CLASS:
+                classes.add(node.characterClass);
+                emit(CLASS, classes.size() - 1, 0, keywordIndex);
+                break;
+            case Node.ASSERT:
+                emit(ASSERT, node.c, 0, keywordIndex);
+                break;
+            case Node.CONCAT:
+                for (Node child: node.children) {
+                    compile(child, keywordIndex, patternStart);
+                }
+                break;
+            case Node.ALTERNATE: {
+                List<Integer> jumps = new ArrayList<>();
+                for (int i = 0; i < node.children.size() - 1; i++) {
+                    int split = emit(SPLIT, size + 1, 0, keywordIndex);
+                    compile(node.children.get(i), keywordIndex, patternStart);
+                    jumps.add(emit(JUMP, 0, 0, keywordIndex));
+                    alternatives[split] = size;
+                }
+                compile(node.children.get(node.children.size() - 1), keywordIndex, patternStart);
+                for (int jump: jumps) {
+                    args[jump] = size;
+                }
+                break;
+            }
+            case Node.REPEAT: {
+                Node child = node.children.get(0);
+                for (int i = 0; i < node.min; i++) {
+                    compile(child, keywordIndex, patternStart);
+                }
+                if(node.max == -1){
+                    int loop = emit(SPLIT, size + 1, 0, keywordIndex);
+                    compile(child, keywordIndex, patternStart);
+                    emit(JUMP, loop, 0, keywordIndex);
+                    alternatives[loop] = size;
+                }
+                else{
+                    List<Integer> splits = new ArrayList<>();
+                    for (int i = node.min; i < node.max; i++) {
+                        splits.add(emit(SPLIT, size + 1, 0, keywordIndex));
+                        compile(child, keywordIndex, patternStart);
+                    }
+                    for (int split: splits) {
+                        alternatives[split] = size;
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Append an instruction to the program
+     *
+     * @param op operation
+     * @param arg character, class, assertion, keyword or preferred target
+     * @param alternative second target of a split
+     * @param keywordIndex index of the keyword the instruction belongs to
+     * @return index of the instruction
+     */
+    private int emit(byte op, int arg, int alternative, int keywordIndex){
+        if(size == ops.length){
+            ops = Arrays.copyOf(ops, size * 2);
+            args = Arrays.copyOf(args, size * 2);
+            alternatives = Arrays.copyOf(alternatives, size * 2);
+            keywordOf = Arrays.copyOf(keywordOf, size * 2);
+        }
+        ops[size] = op;
+        args[size] = arg;
+        alternatives[size] = alternative;
+        keywordOf[size] = keywordIndex;
+        return size++;
+    }
+
+    /**
+     * @param c character or -1 outside of the text
+     * @return true if the character belongs to a word
+     */
+    private static boolean isWordChar(int c){
+        return c != -1 && (Character.isLetterOrDigit(c) || c == '_');
+    }
+
+    /**
+     * The state of a search over one text. Each thread of the VM is an
+     * instruction and the start of its match, at most one thread is kept
+     * per instruction and the one with the earliest start wins
+     */
+    public final class Search {
+
+        private final MatchHandler handler;
+        private final int[] pendingPcs = new int[size];
+        private final int[] pendingStarts = new int[size];
+        private int pendingCount;
+        private final int[] currentPcs = new int[size];
+        private final int[] currentStarts = new int[size];
+        private int currentCount;
+        private final int[] marks = new int[size];
+        private int generation;
+        private final int[] stack = new int[size * 2 + 2];
+        private final int[] nextStart = new int[keywordCount]; //matches of a keyword don't overlap
+        private int position;
+        private int previous = -1;
+        private boolean matched;
+
+        private Search(MatchHandler handler){
+            this.handler = handler;
+        }
+
+        /**
+         * Feed the next character of the text, already lowercased
+         *
+         * @param c next character
+         */
+        public void feed(char c){
+            closure(c);
+            pendingCount = 0;
+            for (int i = 0; i < currentCount; i++) {
+                int pc = currentPcs[i];
+                boolean consumed;
+                switch (ops[pc]){
+                    case CHAR:
+                        consumed = args[pc] == c;
+                        break;
+                    case CLASS:
+                        consumed = classes.get(args[pc]).matches(c);
+                        break;
+                    default:
+                        consumed = true; //ANY
+                }
+                if(consumed){
+                    pendingPcs[pendingCount] = pc + 1;
+                    pendingStarts[pendingCount++] = currentStarts[i];
+                }
+            }
+            previous = c;
+            position++;
+        }
+
+        /**
+         * Report the matches that end at the end of the text
+         */
+        public void finish(){
+            closure(-1);
+            pendingCount = 0;
+            currentCount = 0;
+        }
+
+        /**
+         * Follow the threads that consumed the previous character and start
+         * a thread for every pattern at the current position
+         *
+         * @param next character at the current position or -1 at the end of the text
+         */
+        private void closure(int next){
+            matched = false;
+            followThreads(next);
+            if(matched){ //the threads of the match may hold instructions that a match starting here needs
+                followThreads(next);
+            }
+        }
+
+        /**
+         * Follow the live threads and the new ones once, the threads of a
+         * keyword that ended a match are dropped
+         *
+         * @param next character at the current position or -1 at the end of the text
+         */
+        private void followThreads(int next){
+            generation++;
+            currentCount = 0;
+            int oldest = position - MAX_MATCH_LENGTH;
+            for (int i = 0; i < pendingCount; i++) {
+                int start = pendingStarts[i];
+                if(start >= oldest && start >= nextStart[keywordOf[pendingPcs[i]]]){
+                    follow(pendingPcs[i], start, next);
+                }
+            }
+            for (int start: starts) {
+                follow(start, position, next);
+            }
+        }
+
+        /**
+         * Follow the jumps, splits and assertions from an instruction and add
+         * the instructions that consume a character to the current threads
+         *
+         * @param pc instruction to start from
+         * @param start of the match of the thread
+         * @param next character at the current position or -1 at the end of the text
+         */
+        private void follow(int pc, int start, int next){
+            int top = 0;
+            stack[top++] = pc;
+            while(top > 0){
+                pc = stack[--top];
+                if(marks[pc] == generation){
+                    continue;
+                }
+                marks[pc] = generation;
+                switch (ops[pc]){
+                    case JUMP:
+                        stack[top++] = args[pc];
+                        break;
+                    case SPLIT:
+                        stack[top++] = alternatives[pc];
+                        stack[top++] = args[pc]; //the preferred branch is followed first
+                        break;
+                    case ASSERT:
+                        if(holds(args[pc], next)){
+                            stack[top++] = pc + 1;
+                        }
+                        break;
+                    case MATCH:
+                        if(start >= nextStart[args[pc]]){
+                            nextStart[args[pc]] = position;
+                            matched = true;
+                            handler.match(args[pc], start, position);
+                        }
+                        break;
+                    default:
+                        currentPcs[currentCount] = pc;
+                        currentStarts[currentCount++] = start;
+                }
+            }
+        }
+
+        /**
+         * @param assertion kind of the assertion
+         * @param next character at the current position or -1 at the end of the text
+         * @return true if the assertion holds between the previous and the next character
+         */
+        private boolean holds(int assertion, int next){
+            switch (assertion){
+                case TEXT_START:
+                    return previous == -1;
+                case TEXT_END:
+                    return next == -1;
+                case WORD_BOUNDARY:
+                    return isWordChar(previous) != isWordChar(next);
+                default:
+                    return isWordChar(previous) == isWordChar(next);
+            }
+        }
+    }
+
+    /**
+     * A node of the syntax tree of a pattern
+     */
+    private static class Node {
+
+        private static final int LITERAL = 0;
+        private static final int ANY = 1;
+        private static final int CLASS = 2;
+        private static final int ASSERT = 3;
+        private static final int CONCAT = 4;
+        private static final int ALTERNATE = 5;
+        private static final int REPEAT = 6;
+
+        private final int type;
+        private final List<Node> children = new ArrayList<>();
+        private char c; //literal character or assertion kind
+        private CharClass characterClass;
+        private int min;
+        private int max; //-1 if unbounded
+
+        private Node(int type){
+            this.type = type;
+        }
+
+        private static Node literal(char c){
+            Node node = new Node(LITERAL);
+            node.c = c;
+            return node;
+        }
+
+        private static Node assertion(int kind){
+            Node node = new Node(ASSERT);
+            node.c = (char) kind;
+            return node;
+        }
+
+        private static Node characterClass(CharClass characterClass){
+            Node node = new Node(CLASS);
+            node.characterClass = characterClass;
+            return node;
+        }
+
+        /**
+         * @return true if the node can match empty text
+         */
+        private boolean nullable(){
+            switch (type){
+                case ASSERT:
+                    return true;
+                case CONCAT:
+                    for (Node child: children) {
+                        if(!child.nullable()){
+                            return false;
+                        }
+                    }
+                    return true;
+                case ALTERNATE:
+                    for (Node child: children) {
+                        if(child.nullable()){
+                            return true;
+                        }
+                    }
+                    return false;
+                case REPEAT:
+                    return min == 0 || children.get(0).nullable();
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Recursive descent parser of the regex syntax
+     */
+    private static class Parser {
+
+        private final String pattern;
+        private int index;
+
+        private Parser(String pattern){
+            this.pattern = pattern;
+        }
+
+        private Node alternation(){
+            Node first = concatenation();
+            if(!peek('|')){
+                return first;
+            }
+            Node node = new Node(Node.ALTERNATE);
+            node.children.add(first);
+            while(peek('|')){
+                index++;
+                node.children.add(concatenation());
+            }
+            return node;
+        }
+
+        private Node concatenation(){
+            Node node = new Node(Node.CONCAT);
+            while(index < pattern.length() && !peek('|') && !peek(')')){
+                node.children.add(repetition());
+            }
+            return node;
+        }
+
+        private Node repetition(){
+            Node node = atom();
+            while(index < pattern.length()){
+                int min;
+                int max;
+                char c = pattern.charAt(index);
+                if(c == '*'){
+                    min = 0;
+                    max = -1;
+                    index++;
+                }
+                else if(c == '+'){
+                    min = 1;
+                    max = -1;
+                    index++;
+                }
+                else if(c == '?'){
+                    min = 0;
+                    max = 1;
+                    index++;
+                }
+                else if(c == '{' && pattern.indexOf('}', index) != -1
+                        && pattern.substring(index + 1, pattern.indexOf('}', index)).matches("\\d+(,\\d*)?")){
+                    String[] bounds = pattern.substring(index + 1, pattern.indexOf('}', index)).split(",", -1);
+                    index = pattern.indexOf('}', index) + 1;
+                    min = parseBound(bounds[0]);
+                    max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : parseBound(bounds[1]);
+                    if(max != -1 && max < min){
+                        throw new IllegalArgumentException("the repetition bounds are out of order");
+                    }
+                }
+                else{
+                    return node;
+                }
+                if(peek('?')){
+                    index++; //lazy quantifiers report the same earliest matches
+                }
+                Node repeat = new Node(Node.REPEAT);
+                repeat.children.add(node);
+                repeat.min = min;
+                repeat.max = max;
+                node = repeat;
+            }
+            return node;
+        }
+
+        private int parseBound(String bound){
+            if(bound.length() > 3 || Integer.parseInt(bound) > MAX_REPEAT){
+                throw new IllegalArgumentException("repetitions are limited to " + MAX_REPEAT);
+            }
+            return Integer.parseInt(bound);
+        }
+
+        private Node atom(){
+            char c = pattern.charAt(index++);
+            switch (c){
+                case '(': {
+                    if(peek('?')){
+                        if(pattern.startsWith("?:", index)){
+                            index += 2;
+                        }
+                        else{
+                            throw new IllegalArgumentException("lookaround is not supported");
+                        }
+                    }
+                    Node group = alternation();
+                    if(!peek(')')){
+                        throw new IllegalArgumentException("unclosed group");
+                    }
+                    index++;
+                    return group;
+                }
+                case '[':
+                    return Node.characterClass(characterClass());
+                case '.':
+                    return new Node(Node.ANY);
+                case '^':
+                    return Node.assertion(TEXT_START);
+                case '$':
+                    return Node.assertion(TEXT_END);
+                case '*':
+                case '+':
+                case '?':
+                    throw new IllegalArgumentException("nothing to repeat before '" + c + "'");
+                case '\\':
+                    return escape();
+                default:
+                    return Node.literal(Character.toLowerCase(c));
+            }
+        }
+
+        private Node escape(){
+            if(index == pattern.length()){
+                throw new IllegalArgumentException("the pattern ends with '\\'");
+            }
+            char c = pattern.charAt(index++);
+            if(c == 'b'){
+                return Node.assertion(WORD_BOUNDARY);
+            }
+            if(c == 'B'){
+                return Node.assertion(NOT_WORD_BOUNDARY);
+            }
+            int predefined = CharClass.predefined(c);
+            if(predefined != 0){
+                CharClass characterClass = new CharClass();
+                characterClass.predefined = predefined;
+                return Node.characterClass(characterClass);
+            }
+            if(c >= '1' && c <= '9'){
+                throw new IllegalArgumentException("back references are not supported");
+            }
+            return Node.literal(Character.toLowerCase(CharClass.control(c)));
+        }
+
+        private CharClass characterClass(){
+            CharClass characterClass = new CharClass();
+            if(peek('^')){
+                characterClass.negated = true;
+                index++;
+            }
+            boolean first = true;
+            while(true){
+                if(index == pattern.length()){
+                    throw new IllegalArgumentException("unclosed character class");
+                }
+                char c = pattern.charAt(index++);
+                if(c == ']' && !first){
+                    return characterClass;
+                }
+                first = false;
+                if(c == '\\' && index < pattern.length()){
+                    char escaped = pattern.charAt(index++);
+                    int predefined = CharClass.predefined(escaped);
+                    if(predefined != 0){
+                        characterClass.predefined |= predefined;
+                        continue;
+                    }
+                    c = CharClass.control(escaped);
+                }
+                char last = c;
+                if(peek('-') && index + 1 < pattern.length() && pattern.charAt(index + 1) != ']'){
+                    index++;
+                    last = pattern.charAt(index++);
+                    if(last == '\\' && index < pattern.length()){
+                        last = CharClass.control(pattern.charAt(index++));
+                    }
+                    if(last < c){
+                        throw new IllegalArgumentException("the character range is out of order");
+                    }
+                }
+                characterClass.addRange(c, last);
+            }
+        }
+
+        private boolean peek(char c){
+            return index < pattern.length() && pattern.charAt(index) == c;
+        }
+    }
+
+    /**
+     * A set of characters made of ranges and the predefined \d \w \s classes
+     */
+    private static class CharClass {
+
+        private static final int DIGIT = 1;
+        private static final int NOT_DIGIT = 2;
+        private static final int WORD = 4;
+        private static final int NOT_WORD = 8;
+        private static final int SPACE = 16;
+        private static final int NOT_SPACE = 32;
+
+        private char[] ranges = new char[0];
+        private int predefined;
+        private boolean negated;
+
+        /**
+         * @param c letter after a backslash
+         * @return flag of the predefined class or 0
+         */
+        private static int predefined(char c){
+            switch (c){
+                case 'd': return DIGIT;
+                case 'D': return NOT_DIGIT;
+                case 'w': return WORD;
+                case 'W': return NOT_WORD;
+                case 's': return SPACE;
+                case 'S': return NOT_SPACE;
+                default: return 0;
+            }
+        }
+
+        /**
+         * @param c letter after a backslash
+         * @return control character it stands for, or the letter itself
+         */
+        private static char control(char c){
+            switch (c){
+                case 'n': return '\n';
+                case 't': return '\t';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                default: return c;
+            }
+        }
+
+        private void addRange(char first, char last){
+            ranges = Arrays.copyOf(ranges, ranges.length + 2);
+            ranges[ranges.length - 2] = first;
+            ranges[ranges.length - 1] = last;
+        }
+
+        /**
+         * @param c lowercased character of the text
+         * @return true if the character belongs to the class, ignoring case
+         */
+        private boolean matches(char c){
+            return (inRanges(c) || inRanges(Character.toUpperCase(c)) || inPredefined(c)) != negated;
+        }
+
+        private boolean inRanges(char c){
+            for (int i = 0; i < ranges.length; i += 2) {
+                if(c >= ranges[i] && c <= ranges[i + 1]){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean inPredefined(char c){
+            return ((predefined & DIGIT) != 0 && Character.isDigit(c))
+                    || ((predefined & NOT_DIGIT) != 0 && !Character.isDigit(c))
+                    || ((predefined & WORD) != 0 && isWordChar(c))
+                    || ((predefined & NOT_WORD) != 0 && !isWordChar(c))
+                    || ((predefined & SPACE) != 0 && Character.isWhitespace(c))
+                    || ((predefined & NOT_SPACE) != 0 && !Character.isWhitespace(c));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SaveFormat reads and writes the binary save file in a single sequential
+ * pass. Keywords and log entries are length-prefixed, so they can contain
+ * any character and have no length limit. Version 1 files wrote the strings
+ * with writeUTF and are still read
+ *
+ * File layout: magic number, format version, generation and save time,
+ * then a sequence of records made of a type byte and the length of the
+ * payload. A URL record holds the URL and its keywords, a log record holds
+ * one log entry, an interval record holds the learned check interval of a
+ * URL, a selector record holds the CSS selector a URL is scoped to and an
+ * end record closes the file. Records of an unknown
+ * type are skipped, so newer files can add record types
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class SaveFormat {
+
+    private static final int MAGIC = 0x55535356; //"USSV"
+    private static final int VERSION = 2;
+    private static final int UTF_VERSION = 1; //strings written with writeUTF, limited to 64KB
+    private static final byte END = 0;
+    private static final byte URL = 1;
+    private static final byte LOG = 2;
+    private static final byte INTERVAL = 3;
+    private static final byte SELECTOR = 4;
+
+    private SaveFormat(){}
+
+    /**
+     * Write the save data
+     *
+     * @param out stream to write to, should be buffered
+     * @param generation of the save file, matched against the journal on load
+     * @param keyMap URL to keywords map
+     * @param logs list of logs
+     * @param intervals learned check intervals by URL, in milliseconds
+     * @param selectors CSS selectors by URL
+     * @throws IOException
+     */
+    public static void write(OutputStream out, long generation, Map<String, ? extends List<String>> keyMap,
+                             List<String> logs, Map<String, Long> intervals, Map<String, String> selectors) throws IOException {
+        DataOutputStream output = new DataOutputStream(out);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(generation);
+        output.writeLong(System.currentTimeMillis());
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOutput = new DataOutputStream(payload);
+        for (Map.Entry<String, ? extends List<String>> entry: keyMap.entrySet()) {
+            payload.reset();
+            SaveJournal.writeString(payloadOutput, entry.getKey());
+            payloadOutput.writeInt(entry.getValue().size());
+            for (String keyword: entry.getValue()) {
+                SaveJournal.writeString(payloadOutput, keyword);
+            }
+            writeRecord(output, URL, payload);
+        }
+        for (String logEntry: logs) {
+            payload.reset();
+            SaveJournal.writeString(payloadOutput, logEntry);
+            writeRecord(output, LOG, payload);
+        }
+        for (Map.Entry<String, Long> entry: intervals.entrySet()) {
+            if(keyMap.containsKey(entry.getKey())){
+                payload.reset();
+                SaveJournal.writeString(payloadOutput, entry.getKey());
+                payloadOutput.writeLong(entry.getValue());
+                writeRecord(output, INTERVAL, payload);
+            }
+        }
+        for (Map.Entry<String, String> entry: selectors.entrySet()) {
+            if(keyMap.containsKey(entry.getKey())){
+                payload.reset();
+                SaveJournal.writeString(payloadOutput, entry.getKey());
+                SaveJournal.writeString(payloadOutput, entry.getValue());
+                writeRecord(output, SELECTOR, payload);
+            }
+        }
+        payload.reset();
+        writeRecord(output, END, payload);
+        output.flush();
+    }
+
+    /**
+     * @param output to write the record to
+     * @param type of the record
+     * @param payload of the record
+     * @throws IOException
+     */
+    private static void writeRecord(DataOutputStream output, byte type, ByteArrayOutputStream payload) throws IOException {
+        output.writeByte(type);
+        output.writeInt(payload.size());
+        payload.writeTo(output);
+    }
+
+    /**
+     * Check if a stream starts with a binary save file without consuming it
+     *
+     * @param in stream to check
+     * @return true if the stream holds the binary format
+     * @throws IOException
+     */
+    public static boolean isBinary(BufferedInputStream in) throws IOException {
+        in.mark(4);
+        try{
+            return new DataInputStream(in).readInt() == MAGIC;
+        }
+        catch (EOFException e){
+            return false;
+        }
+        finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Read the save data
+     *
+     * @param in stream to read from, should be buffered
+     * @param keyMap URL to keywords map to fill
+     * @param logs list of logs to fill
+     * @param intervals map of the learned check intervals to fill
+     * @param selectors map of the CSS selectors to fill
+     * @return generation of the save file
+     * @throws IOException if the file is not a binary save file or is incomplete
+     */
+    public static long read(InputStream in, HashMap<String, ArrayList<String>> keyMap, List<String> logs,
+                            Map<String, Long> intervals, Map<String, String> selectors) throws IOException {
+        DataInputStream input = new DataInputStream(in);
+        if(input.readInt() != MAGIC){
+            throw new IOException("Unknown save file format");
+        }
+        int version = input.readInt();
+        if(version > VERSION){
+            throw new IOException("Save file version " + version + " is newer than this application");
+        }
+        long generation = input.readLong();
+        input.readLong(); //save time
+        try{
+            while(true){
+                byte type = input.readByte();
+                int length = input.readInt();
+                if(type == END){
+                    return generation;
+                }
+                if(type == URL){
+                    String url = readString(input, version, length);
+                    int count = input.readInt();
+                    ArrayList<String> keywords = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        keywords.add(readString(input, version, length));
+                    }
+                    keyMap.put(url, keywords);
+                }
+                else if(type == LOG){
+                    logs.add(readString(input, version, length));
+                }
+                else if(type == INTERVAL){
+                    String url = readString(input, version, length);
+                    intervals.put(url, input.readLong());
+                }
+                else if(type == SELECTOR){
+                    String url = readString(input, version, length);
+                    selectors.put(url, readString(input, version, length));
+                }
+                else{
+                    input.readFully(new byte[length]);
+                }
+            }
+        }
+        catch (EOFException e){
+            throw new IOException("The save file is incomplete", e);
+        }
+    }
+
+    /**
+     * Read a string in the format of the file version
+     *
+     * @param input to read from
+     * @param version of the save file
+     * @param limit length of the record the string belongs to
+     * @return string
+     * @throws IOException if the string is incomplete or its length is garbled
+     */
+    private static String readString(DataInputStream input, int version, int limit) throws IOException {
+        return version == UTF_VERSION ? input.readUTF() : SaveJournal.readString(input, limit);
+    }
+}
@@ -0,0 +1,394 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SaveJournal records the changes made to the URLs, keywords and logs since
+ * the last full save as an append-only file next to the save file, so that a
+ * save only has to write what has changed. The changes are buffered in memory
+ * until the next flush
+ *
+ * File layout: magic number, format version and the generation of the save
+ * file the journal belongs to, then one record per change made of an
+ * operation byte followed by its arguments, each one the length of its UTF-8
+ * bytes and the bytes. Version 1 journals wrote the arguments with writeUTF,
+ * they are still replayed but never appended to. A journal whose generation
+ * does not match the save file is ignored
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class SaveJournal {
+
+    public static final byte ADD_URL = 1;
+    public static final byte DELETE_URL = 2;
+    public static final byte ADD_KEYWORD = 3;
+    public static final byte DELETE_KEYWORD = 4;
+    public static final byte ADD_LOG = 5;
+    public static final byte REMOVE_LOG = 6;
+    public static final byte CLEAR_LOGS = 7;
+    public static final byte REMOVE_LOG_AT = 8;
+    public static final byte SET_INTERVAL = 9;
+    public static final byte SET_SELECTOR = 10;
+
+    private static final int MAGIC = 0x55534a4c; //"USJL"
+    public static final int VERSION = 2;
+    private static final int UTF_VERSION = 1; //arguments written with writeUTF, limited to 64KB
+    private static final int HEADER_SIZE = 16;
+
+    private final ByteArrayOutputStream pending;
+    private final DataOutputStream pendingOutput;
+    private int pendingRecords;
+    private Path path;
+    private long generation;
+    private long size;
+    private int records;
+
+    /**
+     * Constructor for the SaveJournal class
+     */
+    public SaveJournal(){
+        pending = new ByteArrayOutputStream();
+        pendingOutput = new DataOutputStream(pending);
+    }
+
+    /**
+     * Buffer a change until the next flush
+     *
+     * @param operation one of the operation constants
+     * @param arguments of the operation
+     */
+    synchronized public void record(byte operation, String... arguments){
+        try{
+            pendingOutput.writeByte(operation);
+            for (String argument: arguments) {
+                writeString(pendingOutput, argument);
+            }
+            pendingRecords++;
+        }
+        catch (IOException e){
+            throw new IllegalStateException(e); //writing to memory does not fail
+        }
+    }
+
+    /**
+     * Start appending to the journal of a save file, continuing after the
+     * records that were replayed from it
+     *
+     * @param path to the journal file
+     * @param generation of the save file
+     * @param validLength length of the replayed part of the journal, or -1 to start a new journal
+     * @param replayedRecords number of records in the replayed part
+     * @throws IOException
+     */
+    synchronized public void open(Path path, long generation, long validLength, int replayedRecords) throws IOException {
+        this.path = path;
+        this.generation = generation;
+        discardPending();
+        if(validLength < HEADER_SIZE){
+            reset(generation);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(validLength); //drop a record that was only partially written
+        }
+        size = validLength;
+        records = replayedRecords;
+    }
+
+    /**
+     * Start a new, empty journal for a new generation of the save file
+     *
+     * @param generation of the save file
+     * @throws IOException
+     */
+    synchronized public void reset(long generation) throws IOException {
+        this.generation = generation;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(header.hasRemaining()){
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+        size = HEADER_SIZE;
+        records = 0;
+        discardPending();
+    }
+
+    /**
+     * Append the buffered changes to the journal file
+     *
+     * @throws IOException
+     */
+    synchronized public void flush() throws IOException {
+        if(pendingRecords == 0){
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.position(size);
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        size += pending.size();
+        records += pendingRecords;
+        discardPending();
+    }
+
+    /**
+     * Forget the changes buffered since the last flush, used when they are
+     * already part of a full save
+     */
+    synchronized public void discardPending(){
+        pending.reset();
+        pendingRecords = 0;
+    }
+
+    /**
+     * Stop appending to the current journal file
+     */
+    synchronized public void detach(){
+        path = null;
+    }
+
+    /**
+     * @param path to a journal file
+     * @return true if the journal is appending to the file
+     */
+    synchronized public boolean isOpenFor(Path path){
+        return this.path != null && this.path.equals(path);
+    }
+
+    /**
+     * @return generation of the save file the journal belongs to
+     */
+    synchronized public long getGeneration(){ return generation; }
+
+    /**
+     * @return number of records in the journal file and in the buffer
+     */
+    synchronized public int getRecordCount(){ return records + pendingRecords; }
+
+    /**
+     * Apply the records of a journal file to the data of a save file. The
+     * replay stops at a partially written or corrupt record and keeps the
+     * changes of the records before it
+     *
+     * @param path to the journal file
+     * @param generation of the save file the data was read from
+     * @param keyMap URL to keywords map to apply the changes to
+     * @param logs list of logs to apply the changes to
+     * @param intervals learned check intervals to apply the changes to
+     * @param selectors CSS selectors to apply the changes to
+     * @return length, record count and format version of the replayed part, or null if the journal does not belong to the save file
+     * @throws IOException
+     */
+    public static long[] replay(Path path, long generation, HashMap<String, ArrayList<String>> keyMap, List<String> logs,
+                                Map<String, Long> intervals, Map<String, String> selectors) throws IOException {
+        if(!Files.exists(path)){
+            return null;
+        }
+        long limit = Files.size(path);
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)));
+             DataInputStream input = new DataInputStream(counter)) {
+            int version;
+            try{
+                if(input.readInt() != MAGIC){
+                    return null;
+                }
+                version = input.readInt();
+                if(version < UTF_VERSION || version > VERSION || input.readLong() != generation){
+                    return null;
+                }
+            }
+            catch (EOFException e){
+                return null;
+            }
+            RecordReader reader = new RecordReader(input, version, limit);
+            long validLength = counter.getCount();
+            long count = 0;
+            try{
+                while(true){
+                    int operation = input.read();
+                    if(operation == -1){
+                        break;
+                    }
+                    if(!apply((byte) operation, reader, keyMap, logs, intervals, selectors)){
+                        break; //unknown record, the rest of the journal cannot be trusted
+                    }
+                    validLength = counter.getCount();
+                    count++;
+                }
+            }
+            catch (EOFException e){
+                //the last record was not written completely
+            }
+            catch (StreamCorruptedException | UTFDataFormatException | NumberFormatException e){
+                //a garbled record, the rest of the journal cannot be trusted
+            }
+            return new long[]{validLength, count, version};
+        }
+    }
+
+    /**
+     * Read the arguments of a record and apply it
+     *
+     * @param operation of the record
+     * @param input to read the arguments from
+     * @param keyMap URL to keywords map
+     * @param logs list of logs
+     * @param intervals learned check intervals
+     * @param selectors CSS selectors
+     * @return false if the operation is unknown
+     * @throws IOException if the record is incomplete or corrupt
+     */
+    private static boolean apply(byte operation, RecordReader input, HashMap<String, ArrayList<String>> keyMap,
+                                 List<String> logs, Map<String, Long> intervals, Map<String, String> selectors) throws IOException {
+        switch (operation){
+            case ADD_URL:
+                keyMap.put(input.read(), new ArrayList<>());
+                break;
+            case DELETE_URL: {
+                String url = input.read();
+                keyMap.remove(url);
+                intervals.remove(url);
+                selectors.remove(url);
+                break;
+            }
+            case ADD_KEYWORD: {
+                ArrayList<String> keywords = keyMap.get(input.read());
+                String keyword = input.read();
+                if(keywords != null){
+                    keywords.add(keyword);
+                }
+                break;
+            }
+            case DELETE_KEYWORD: {
+                ArrayList<String> keywords = keyMap.get(input.read());
+                String keyword = input.read();
+                if(keywords != null){
+                    keywords.remove(keyword);
+                }
+                break;
+            }
+            case ADD_LOG:
+                logs.add(input.read());
+                break;
+            case REMOVE_LOG:
+                logs.remove(input.read());
+                break;
+            case CLEAR_LOGS:
+                logs.clear();
+                break;
+            case SET_INTERVAL: {
+                String url = input.read();
+                intervals.put(url, Long.parseLong(input.read()));
+                break;
+            }
+            case SET_SELECTOR: {
+                String url = input.read();
+                String selector = input.read();
+                if(selector.isEmpty()){
+                    selectors.remove(url);
+                }
+                else{
+                    selectors.put(url, selector);
+                }
+                break;
+            }
+            case REMOVE_LOG_AT: {
+                int index = Integer.parseInt(input.read());
+                if(index >= 0 && index < logs.size()){
+                    logs.remove(index);
+                }
+                break;
+            }
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write a string as the length of its UTF-8 bytes followed by the bytes,
+     * unlike writeUTF it has no 64KB limit
+     *
+     * @param output to write to
+     * @param string to write
+     * @throws IOException
+     */
+    static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Read a string written by writeString
+     *
+     * @param input to read from
+     * @param limit largest length that can be valid, the size of the file
+     * @return string
+     * @throws IOException if the string is incomplete or its length is garbled
+     */
+    static String readString(DataInputStream input, long limit) throws IOException {
+        int length = input.readInt();
+        if(length < 0 || length > limit){
+            throw new StreamCorruptedException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the arguments of the records in the format of the journal version
+     */
+    private static class RecordReader {
+
+        private final DataInputStream input;
+        private final int version;
+        private final long limit;
+
+        /**
+         * Constructor for the RecordReader class
+         *
+         * @param input to read the arguments from
+         * @param version of the journal
+         * @param limit largest length that can be valid, the size of the file
+         */
+        RecordReader(DataInputStream input, int version, long limit){
+            this.input = input;
+            this.version = version;
+            this.limit = limit;
+        }
+
+        /**
+         * @return next argument
+         * @throws IOException if the argument is incomplete or corrupt
+         */
+        String read() throws IOException {
+            return version == UTF_VERSION ? input.readUTF() : readString(input, limit);
+        }
+    }
+}
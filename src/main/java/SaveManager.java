@@ -3,13 +3,14 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.prefs.Preferences;
 
 /**
  * A class responsible for generating save data, writing it to a file and retrieving
- * data from a file
+ * data from a file. Files are written in the binary SaveFormat, files in the old
+ * text format are detected on load and converted on the next save
  *
  * @version 0.4
  * @author Albert Shakirzianov
@@ -19,6 +20,10 @@ public class SaveManager {
     private Path pathToSave;
     private boolean isPathSet;
     private final DataManager dataManager;
+    private final SaveJournal journal;
+    private final boolean journaling;
+    private final int compactionThreshold;
+    private boolean legacyFormat;
 
     /**
      * Constructor for the SaveManager class
@@ -27,7 +32,10 @@ public class SaveManager {
      */
     public SaveManager(DataManager dataManager){
         this.dataManager = dataManager;
-        Preferences prefs = Preferences.userNodeForPackage(Main.class);
+        journal = new SaveJournal();
+        journaling = dataManager.getSettings().getBoolean("journal", true);
+        compactionThreshold = dataManager.getSettings().getInt("journalCompaction", 10000);
+        Preferences prefs = Preferences.userNodeForPackage(SaveManager.class);
         if(prefs.get("pathToLastSave", null) == null){
             isPathSet = false;
         }
@@ -42,10 +50,23 @@ public class SaveManager {
      * @param pathToSave
      */
     public void setPathToSave(Path pathToSave){
+        if(!pathToSave.equals(this.pathToSave)){
+            journal.detach(); //the next save writes the whole file at the new path
+        }
         this.pathToSave = pathToSave;
         isPathSet = true;
     }
 
+    /**
+     * Forget the path to the save file, the data is then only kept in memory
+     */
+    public void clearPathToSave(){
+        journal.detach();
+        journal.discardPending();
+        pathToSave = null;
+        isPathSet = false;
+    }
+
     /**
      * Return true if the object has a path to a save file
      *
@@ -56,91 +77,195 @@ public class SaveManager {
     }
 
     /**
-     * Write the save data to a file
+     * Get the path to the fingerprint file that belongs to the save file
+     *
+     * @return path or null if the path to a save file is not set
+     */
+    public Path getFingerprintPath(){
+        return pathToSave == null ? null : Paths.get(pathToSave.toString() + ".fingerprints");
+    }
+
+    /**
+     * Get the path to the journal file that belongs to the save file
+     *
+     * @return path or null if the path to a save file is not set
+     */
+    public Path getJournalPath(){
+        return pathToSave == null ? null : Paths.get(pathToSave.toString() + ".journal");
+    }
+
+    /**
+     * Record a change to the URLs, keywords or logs, it is written to the
+     * journal on the next save
+     *
+     * @param operation one of the SaveJournal operation constants
+     * @param arguments of the operation
+     */
+    public void recordChange(byte operation, String... arguments){
+        if(journaling && pathToSave != null){ //without a save file the changes have nowhere to go
+            journal.record(operation, arguments);
+        }
+    }
+
+    /**
+     * Write the save data to a file. In journaling mode only the changes
+     * since the last save are appended to the journal, the whole save file
+     * is written again when the journal has grown past the compaction
+     * threshold or when the file still has the old text format
      *
      * @throws IOException
      */
     public void save() throws IOException {
         if(pathToSave != null ){
-            if(!Files.exists(pathToSave)){
-                Files.createFile(pathToSave);
+            if(journaling && !legacyFormat && journal.isOpenFor(getJournalPath())
+                    && journal.getRecordCount() < compactionThreshold){
+                journal.flush();
+                return;
+            }
+            long generation = Math.max(journal.getGeneration() + 1, System.currentTimeMillis()); //unlikely to match a stale journal
+            Path temporary = Paths.get(pathToSave.toString() + ".tmp");
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+                SaveFormat.write(output, generation, dataManager.getUrlKeyMap(), dataManager.getLogs(),
+                        dataManager.getIntervals(), dataManager.getSelectors());
+            }
+            Files.move(temporary, pathToSave, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            legacyFormat = false;
+            if(journaling){
+                journal.open(getJournalPath(), generation, -1, 0); //the new save file already contains every change
+            }
+            else{
+                journal.discardPending();
             }
-
-            OutputStream outputStream = new FileOutputStream(pathToSave.toString());
-            PrintWriter writer = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
-            writer.print(getSaveData());
-            writer.close();
         }
     }
 
 
     /**
-     * Generate a String with save data
+     * Generate the save data in the binary format
      *
      * @return save data
      */
-    public String getSaveData(){
-        HashMap<String, ArrayList<String>> urlMap = dataManager.getUrlKeyMap();
-
-        StringBuilder builder = new StringBuilder();
-        SimpleDateFormat sdt = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
-        Date now = new Date();
-        builder.append("---URL Spy Save File " + sdt.format(now) + "---" + "\n");
-        builder.append("<URLs + keywords>" + "\n");
-        for (String url: urlMap.keySet()) {
-            builder.append(url + "|");
-            if(!urlMap.get(url).isEmpty()){
-                for (String keyword: urlMap.get(url)) {
-                    builder.append(keyword + ",");
-                }
-                builder.deleteCharAt(builder.lastIndexOf(","));
+    public byte[] getSaveData(){
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try{
+            SaveFormat.write(output, journal.getGeneration(), dataManager.getUrlKeyMap(), dataManager.getLogs(),
+                    dataManager.getIntervals(), dataManager.getSelectors());
+        }
+        catch (IOException e){
+            throw new UncheckedIOException(e); //writing to memory does not fail
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Read the save file and replay its journal in a single pass, then keep
+     * appending the changes to the journal
+     *
+     * @param keyMap URL to keywords map to fill
+     * @param logs list of logs to fill
+     * @param intervals map of the learned check intervals to fill
+     * @param selectors map of the CSS selectors to fill
+     * @throws IOException
+     */
+    public void load(HashMap<String, ArrayList<String>> keyMap, List<String> logs,
+                     Map<String, Long> intervals, Map<String, String> selectors) throws IOException {
+        journal.detach();
+        long generation = read(keyMap, logs, intervals, selectors);
+        if(journaling){
+            long[] replayed = SaveJournal.replay(getJournalPath(), generation, keyMap, logs, intervals, selectors);
+            if(replayed != null && replayed[2] != SaveJournal.VERSION){
+                return; //an old journal is not appended to, the next save writes the whole file
             }
-            builder.append("\n");
+            journal.open(getJournalPath(), generation, replayed == null ? -1 : replayed[0],
+                    replayed == null ? 0 : (int) replayed[1]);
         }
-        builder.append("</URLs + keywords>" + "\n");
-        builder.append("<Logs>" + "\n");
-        for (String logEntry: dataManager.getLogs()) {
-            builder.append("~" + logEntry + "\n");
+    }
+
+    /**
+     * Read the URLs, keywords and logs from the save file in either format
+     *
+     * @param keyMap URL to keywords map to fill
+     * @param logs list of logs to fill
+     * @param intervals map of the learned check intervals to fill
+     * @param selectors map of the CSS selectors to fill
+     * @return generation of the save file, 0 for files written before the journal
+     * @throws IOException
+     */
+    private long read(HashMap<String, ArrayList<String>> keyMap, List<String> logs,
+                      Map<String, Long> intervals, Map<String, String> selectors) throws IOException {
+        try (BufferedInputStream input = new BufferedInputStream(Files.newInputStream(pathToSave), 1 << 16)) {
+            legacyFormat = !SaveFormat.isBinary(input);
+            if(legacyFormat){
+                return readText(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)), keyMap, logs);
+            }
+            return SaveFormat.read(input, keyMap, logs, intervals, selectors);
         }
-        builder.append("</Logs>" + "\n");
+    }
 
-        return builder.toString();
+    /**
+     * Read a save file in the text format used before the binary one
+     *
+     * @param reader of the save file
+     * @param keyMap URL to keywords map to fill
+     * @param logs list of logs to fill
+     * @return generation of the save file, 0 for files written before the journal
+     * @throws IOException
+     */
+    private static long readText(BufferedReader reader, HashMap<String, ArrayList<String>> keyMap,
+                                 List<String> logs) throws IOException {
+        long generation = 0;
+        try{
+            String line;
+            while((line = reader.readLine()) != null){
+                if(line.startsWith("<Generation ") && line.endsWith(">")){
+                    generation = Long.parseLong(line.substring("<Generation ".length(), line.length() - 1));
+                }
+                if(line.contains("|")){
+                    String url = line.substring(0, line.indexOf('|'));
+                    ArrayList<String> keywords = new ArrayList<>(Arrays.asList(line.substring(line.indexOf('|') + 1).split(",")));
+                    if(keywords.get(0).isEmpty()){
+                        keywords.remove(0);
+                    }
+                    keyMap.put(url, keywords);
+                }
+                if(line.contains("~")){
+                    logs.add(line.substring(1));
+                }
+            }
+        }
+        catch (NumberFormatException e){
+            throw new IOException("Malformed save file generation", e);
+        }
+        return generation;
     }
 
     /**
-     * Retrieve the URL to keywords map from a save file
+     * Retrieve the URL to keywords map from a save file and its journal
      *
      * @return URL to list of keywords Hashmap
      * @throws IOException
      */
     public HashMap<String, ArrayList<String>> loadKeyMap() throws IOException{
-        List<String> lines = Files.readAllLines(pathToSave);
-        lines.removeIf(line -> !line.contains("|"));
         HashMap<String, ArrayList<String>> keyMap = new HashMap<>();
-        for(String line: lines){
-            String url = line.substring(0, line.indexOf('|'));
-            ArrayList<String> keywords = new ArrayList<>(Arrays.asList(line.substring(line.indexOf('|') + 1).split(",")));
-            if(keywords.get(0).isEmpty()){
-                keywords.remove(0);
-            }
-            keyMap.put(url, keywords);
-        }
+        ArrayList<String> logs = new ArrayList<>();
+        HashMap<String, Long> intervals = new HashMap<>();
+        HashMap<String, String> selectors = new HashMap<>();
+        SaveJournal.replay(getJournalPath(), read(keyMap, logs, intervals, selectors), keyMap, logs, intervals, selectors);
         return keyMap;
     }
 
     /**
-     * Retrieve the logs data from a save file
+     * Retrieve the logs data from a save file and its journal
      *
      * @return list of logs
      * @throws IOException
      */
     public ArrayList<String> loadLogs() throws IOException{
-        List<String> lines = Files.readAllLines(pathToSave);
-        lines.removeIf(line -> !line.contains("~"));
+        HashMap<String, ArrayList<String>> keyMap = new HashMap<>();
         ArrayList<String> logs = new ArrayList<>();
-        for(String line: lines){
-            logs.add(line.substring(1));
-        }
+        HashMap<String, Long> intervals = new HashMap<>();
+        HashMap<String, String> selectors = new HashMap<>();
+        SaveJournal.replay(getJournalPath(), read(keyMap, logs, intervals, selectors), keyMap, logs, intervals, selectors);
         return logs;
     }
 
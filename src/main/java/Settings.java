@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Settings class holds the tunable parameters of the application. A value is
+ * taken from the loaded properties first, then from a "urlspy." prefixed
+ * system property, then from the supplied default
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class Settings {
+
+    private final Properties properties;
+
+    /**
+     * Constructor for the Settings class with no properties loaded
+     */
+    public Settings(){
+        this(new Properties());
+    }
+
+    /**
+     * Constructor for the Settings class
+     *
+     * @param properties to read the values from
+     */
+    public Settings(Properties properties){
+        this.properties = properties;
+    }
+
+    /**
+     * Load the settings from a properties file
+     *
+     * @param path to the properties file
+     * @return loaded Settings object
+     * @throws IOException
+     */
+    public static Settings load(Path path) throws IOException{
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            properties.load(inputStream);
+        }
+        return new Settings(properties);
+    }
+
+    /**
+     * Get a String value
+     *
+     * @param key of the setting
+     * @param defaultValue returned when the setting is not present
+     * @return value of the setting
+     */
+    public String get(String key, String defaultValue){
+        String value = properties.getProperty(key);
+        if(value == null){
+            value = System.getProperty("urlspy." + key);
+        }
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * Get an int value
+     *
+     * @param key of the setting
+     * @param defaultValue returned when the setting is not present or invalid
+     * @return value of the setting
+     */
+    public int getInt(String key, int defaultValue){
+        try{
+            return Integer.parseInt(get(key, Integer.toString(defaultValue)));
+        }
+        catch (NumberFormatException e){
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a long value
+     *
+     * @param key of the setting
+     * @param defaultValue returned when the setting is not present or invalid
+     * @return value of the setting
+     */
+    public long getLong(String key, long defaultValue){
+        try{
+            return Long.parseLong(get(key, Long.toString(defaultValue)));
+        }
+        catch (NumberFormatException e){
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a boolean value
+     *
+     * @param key of the setting
+     * @param defaultValue returned when the setting is not present
+     * @return value of the setting
+     */
+    public boolean getBoolean(String key, boolean defaultValue){
+        return Boolean.parseBoolean(get(key, Boolean.toString(defaultValue)));
+    }
+}
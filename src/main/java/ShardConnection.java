@@ -0,0 +1,154 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * ShardConnection carries the messages between the shard coordinator and a
+ * worker over a TCP socket. A message is an operation byte, the number of
+ * arguments and the arguments written with writeUTF, the same way as the
+ * records of the SaveJournal
+ *
+ * Coordinator to worker: ASSIGN url, selector, interval, keywords... hands
+ * a URL over to the worker or replaces its state, UNASSIGN url takes it back.
+ * Worker to coordinator: HELLO id opens the session, MATCH url, keyword and
+ * ERROR message forward the notifications, INTERVAL url, milliseconds reports
+ * a learned check interval. Both sides send PING when they have nothing else
+ * to send, a connection that stays silent for three heartbeats is dead
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class ShardConnection implements Closeable {
+
+    public static final byte HELLO = 1;
+    public static final byte ASSIGN = 2;
+    public static final byte UNASSIGN = 3;
+    public static final byte MATCH = 4;
+    public static final byte ERROR = 5;
+    public static final byte INTERVAL = 6;
+    public static final byte PING = 7;
+
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+
+    /**
+     * Constructor for the ShardConnection class
+     *
+     * @param socket connected to the other side
+     * @param heartbeat milliseconds between two pings, reads time out after three of them
+     * @throws IOException
+     */
+    public ShardConnection(Socket socket, long heartbeat) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, heartbeat * 3));
+        input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Send a message
+     *
+     * @param operation one of the operation constants
+     * @param arguments of the operation
+     * @throws IOException
+     */
+    synchronized public void send(byte operation, String... arguments) throws IOException {
+        write(operation, arguments);
+        output.flush();
+    }
+
+    /**
+     * Buffer a message until the next send or flush
+     *
+     * @param operation one of the operation constants
+     * @param arguments of the operation
+     * @throws IOException
+     */
+    synchronized public void write(byte operation, String... arguments) throws IOException {
+        output.writeByte(operation);
+        output.writeShort(arguments.length);
+        for (String argument: arguments) {
+            output.writeUTF(argument);
+        }
+    }
+
+    /**
+     * Send the buffered messages
+     *
+     * @throws IOException
+     */
+    synchronized public void flush() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * Read the next message, only one thread may read from a connection
+     *
+     * @return operation byte followed by the arguments
+     * @throws IOException if the connection was closed or timed out
+     */
+    public Message read() throws IOException {
+        byte operation = input.readByte();
+        String[] arguments = new String[input.readUnsignedShort()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = input.readUTF();
+        }
+        return new Message(operation, arguments);
+    }
+
+    /**
+     * @return address of the other side
+     */
+    public String getRemoteAddress(){
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    /**
+     * Close the socket, a blocked read or send fails
+     */
+    @Override
+    public void close(){
+        try{
+            socket.close();
+        }
+        catch (IOException e){
+            //already closed
+        }
+    }
+
+    /**
+     * Message read from a connection
+     */
+    public static class Message {
+
+        private final byte operation;
+        private final String[] arguments;
+
+        private Message(byte operation, String[] arguments){
+            this.operation = operation;
+            this.arguments = arguments;
+        }
+
+        /**
+         * @return one of the operation constants
+         */
+        public byte getOperation(){ return operation; }
+
+        /**
+         * @param index of the argument
+         * @return argument or null if the message has fewer arguments
+         */
+        public String get(int index){ return index < arguments.length ? arguments[index] : null; }
+
+        /**
+         * @return number of arguments
+         */
+        public int size(){ return arguments.length; }
+    }
+}
@@ -0,0 +1,338 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardCoordinator spreads the checks of the watchlist over a number of
+ * ShardWorker processes. The URLs are partitioned by consistent hashing of
+ * their canonical key, so URLs that share a fetch stay on the same worker and
+ * only the URLs of the neighbouring workers move when a worker joins or
+ * leaves. The matches, errors and learned intervals reported by the workers
+ * go to the DataManager of the coordinator, which keeps the one log and
+ * save file
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class ShardCoordinator {
+
+    private final DataManager dataManager;
+    private final int port;
+    private final long heartbeat;
+    private final HashRing ring;
+    private final HashMap<String, ShardConnection> workers;
+    private final HashMap<String, String> assignments;
+    private final ScheduledExecutorService pinger;
+    private ServerSocket serverSocket;
+    private boolean stopped;
+
+    /**
+     * Constructor for the ShardCoordinator class
+     *
+     * @param dataManager holding the watchlist to distribute
+     * @param port to accept the workers on
+     */
+    public ShardCoordinator(DataManager dataManager, int port){
+        this.dataManager = dataManager;
+        this.port = port;
+        Settings settings = dataManager.getSettings();
+        heartbeat = settings.getLong("shardHeartbeat", 10) * 1000;
+        ring = new HashRing(settings.getInt("shardVirtualNodes", 64));
+        workers = new HashMap<>();
+        assignments = new HashMap<>();
+        pinger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start accepting workers
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::accept, "shard-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        pinger.scheduleWithFixedDelay(this::ping, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        System.out.println("Shard coordinator is listening on port " + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Accept the worker connections until the coordinator is shut down
+     */
+    private void accept(){
+        while(!serverSocket.isClosed()){
+            try{
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "shard-worker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            catch (IOException e){
+                //closed by shutdown
+            }
+        }
+    }
+
+    /**
+     * Read the messages of a worker until its connection fails
+     *
+     * @param socket connected to the worker
+     */
+    private void serve(Socket socket){
+        ShardConnection connection = null;
+        String id = null;
+        try{
+            connection = new ShardConnection(socket, heartbeat);
+            ShardConnection.Message hello = connection.read();
+            if(hello.getOperation() != ShardConnection.HELLO || hello.get(0) == null){
+                return;
+            }
+            id = hello.get(0);
+            join(id, connection);
+            while(true){
+                handle(id, connection.read());
+            }
+        }
+        catch (EOFException e){
+            //closed by the worker
+        }
+        catch (IOException e){
+            if(id != null){
+                System.out.println("Lost the connection to shard worker " + id + ": " + e);
+            }
+        }
+        finally {
+            if(connection != null){
+                connection.close();
+                if(id != null){
+                    leave(id, connection);
+                }
+            }
+            else{
+                try{
+                    socket.close();
+                }
+                catch (IOException e){
+                    //already closed
+                }
+            }
+        }
+    }
+
+    /**
+     * Act on a message of a worker
+     *
+     * @param id of the worker
+     * @param message read from the worker
+     */
+    private void handle(String id, ShardConnection.Message message){
+        String url = message.get(0);
+        switch (message.getOperation()){
+            case ShardConnection.MATCH:
+                if(dataManager.getKeywordSnapshot(url) != null){
+                    dataManager.matchFound(url, message.get(1));
+                }
+                break;
+            case ShardConnection.ERROR:
+                dataManager.error(message.get(0));
+                break;
+            case ShardConnection.INTERVAL:
+                try{
+                    if(dataManager.getKeywordSnapshot(url) != null){
+                        dataManager.setInterval(url, Long.parseLong(message.get(1)));
+                    }
+                }
+                catch (NumberFormatException e){
+                    System.out.println("Shard worker " + id + " sent an invalid interval for " + url);
+                }
+                break;
+            default: //PING and unknown messages of newer workers
+                break;
+        }
+    }
+
+    /**
+     * Place a worker on the ring and move its share of the URLs to it. A
+     * worker that connects again replaces its previous session
+     *
+     * @param id of the worker
+     * @param connection to the worker
+     */
+    synchronized private void join(String id, ShardConnection connection){
+        ShardConnection previous = workers.put(id, connection);
+        if(previous != null){
+            previous.close();
+            assignments.values().removeIf(id::equals); //the new session starts without URLs
+        }
+        else{
+            ring.add(id);
+        }
+        System.out.println("Shard worker " + id + " joined from " + connection.getRemoteAddress());
+        rebalance();
+    }
+
+    /**
+     * Remove a worker from the ring and hand its URLs to the remaining workers
+     *
+     * @param id of the worker
+     * @param connection of the session that ended
+     */
+    synchronized private void leave(String id, ShardConnection connection){
+        if(stopped || workers.get(id) != connection){
+            return; //shut down or replaced by a newer session
+        }
+        workers.remove(id);
+        ring.remove(id);
+        assignments.values().removeIf(id::equals);
+        System.out.println("Shard worker " + id + " left");
+        rebalance();
+    }
+
+    /**
+     * Bring the assignments in line with the ring and the watchlist: URLs
+     * whose worker has changed move to the new one, deleted URLs are taken
+     * back. A moved URL is hashed again on its new worker, so the matches
+     * already on the page are not reported twice
+     */
+    synchronized public void rebalance(){
+        int moved = 0;
+        Iterator<Map.Entry<String, String>> iterator = assignments.entrySet().iterator();
+        while(iterator.hasNext()){
+            Map.Entry<String, String> assignment = iterator.next();
+            if(dataManager.getKeywordSnapshot(assignment.getKey()) == null){
+                write(assignment.getValue(), ShardConnection.UNASSIGN, assignment.getKey());
+                iterator.remove();
+            }
+        }
+        for (String url: dataManager.getUrls()) {
+            String target = ring.get(URLFormatter.canonicalKey(url));
+            String owner = assignments.get(url);
+            if(target == null || target.equals(owner)){
+                continue;
+            }
+            if(owner != null){
+                write(owner, ShardConnection.UNASSIGN, url);
+            }
+            if(write(target, ShardConnection.ASSIGN, assignmentOf(url))){
+                assignments.put(url, target);
+                moved++;
+            }
+            else{
+                assignments.remove(url);
+            }
+        }
+        for (String id: new ArrayList<>(workers.keySet())) {
+            flush(id);
+        }
+        if(moved > 0){
+            System.out.println("Assigned " + moved + " URLs across " + workers.size() + " shard workers");
+        }
+    }
+
+    /**
+     * @param url of a monitored page
+     * @return arguments of the ASSIGN message of the URL
+     */
+    private String[] assignmentOf(String url){
+        List<String> keywords = dataManager.getKeywords(url);
+        String selector = dataManager.getSelector(url);
+        Long interval = dataManager.getInterval(url);
+        List<String> arguments = new ArrayList<>();
+        arguments.add(url);
+        arguments.add(selector == null ? "" : selector);
+        arguments.add(interval == null ? "" : Long.toString(interval));
+        if(keywords != null){
+            arguments.addAll(keywords);
+        }
+        return arguments.toArray(new String[0]);
+    }
+
+    /**
+     * Buffer a message for a worker, a worker that cannot be written to is
+     * disconnected and leaves once its reader notices
+     *
+     * @param id of the worker
+     * @param operation one of the ShardConnection operation constants
+     * @param arguments of the operation
+     * @return true if the message was buffered
+     */
+    private boolean write(String id, byte operation, String... arguments){
+        ShardConnection connection = workers.get(id);
+        if(connection == null){
+            return false;
+        }
+        try{
+            connection.write(operation, arguments);
+            return true;
+        }
+        catch (IOException e){
+            connection.close();
+            return false;
+        }
+    }
+
+    /**
+     * @param id of the worker to send the buffered messages to
+     */
+    private void flush(String id){
+        ShardConnection connection = workers.get(id);
+        try{
+            connection.flush();
+        }
+        catch (IOException e){
+            connection.close();
+        }
+    }
+
+    /**
+     * Send a heartbeat to every worker
+     */
+    synchronized private void ping(){
+        for (String id: new ArrayList<>(workers.keySet())) {
+            if(write(id, ShardConnection.PING)){
+                flush(id);
+            }
+        }
+    }
+
+    /**
+     * @return number of connected workers
+     */
+    synchronized public int getWorkerCount(){
+        return workers.size();
+    }
+
+    /**
+     * Stop accepting workers and disconnect the connected ones, the workers
+     * stop their checks and wait for the coordinator to come back
+     */
+    synchronized public void shutdown(){
+        stopped = true;
+        pinger.shutdownNow();
+        try{
+            if(serverSocket != null){
+                serverSocket.close();
+            }
+        }
+        catch (IOException e){
+            //already closed
+        }
+        for (ShardConnection connection: workers.values()) {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardWorker checks the share of the watchlist that a ShardCoordinator
+ * assigns to it. The assigned URLs live in an in-memory DataManager with its
+ * own ThreadMonitor, the matches and errors are forwarded to the coordinator
+ * and the learned intervals are reported with the heartbeats. When the
+ * connection is lost the worker stops all of its checks and connects again
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class ShardWorker implements Runnable {
+
+    private final String host;
+    private final int port;
+    private final String id;
+    private final long heartbeat;
+    private final long reconnectDelay;
+    private final DataManager dataManager;
+    private final ThreadMonitor threadMonitor;
+    private final Map<String, Long> reportedIntervals;
+    private final ScheduledExecutorService pinger;
+    private volatile ShardConnection connection;
+    private volatile boolean stopped;
+
+    /**
+     * Constructor for the ShardWorker class
+     *
+     * @param settings Settings object
+     * @param host of the coordinator
+     * @param port of the coordinator
+     */
+    public ShardWorker(Settings settings, String host, int port){
+        this.host = host;
+        this.port = port;
+        id = settings.get("shardWorkerId", ManagementFactory.getRuntimeMXBean().getName()); //pid@hostname
+        heartbeat = settings.getLong("shardHeartbeat", 10) * 1000;
+        reconnectDelay = settings.getLong("shardReconnectDelay", 5) * 1000;
+        reportedIntervals = new ConcurrentHashMap<>();
+        dataManager = new DataManager(settings);
+        dataManager.getSaveManager().clearPathToSave(); //the coordinator keeps the save file
+        dataManager.load();
+        dataManager.addSink(new MatchSink() {
+            @Override
+            public void matchFound(String url, String keyword) {
+                forward(ShardConnection.MATCH, url, keyword);
+            }
+
+            @Override
+            public void error(String message) {
+                forward(ShardConnection.ERROR, message);
+            }
+        });
+        threadMonitor = new ThreadMonitor(dataManager);
+        pinger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Connect to the coordinator and check the assigned URLs, connecting
+     * again after a delay whenever the connection is lost
+     */
+    @Override
+    public void run(){
+        pinger.scheduleWithFixedDelay(this::ping, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        while(!stopped){
+            ShardConnection session = null;
+            try{
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(host, port), (int) Math.min(Integer.MAX_VALUE, heartbeat));
+                session = new ShardConnection(socket, heartbeat);
+                session.send(ShardConnection.HELLO, id);
+                connection = session;
+                System.out.println("Shard worker " + id + " connected to " + host + ":" + port);
+                while(true){
+                    handle(session.read());
+                }
+            }
+            catch (EOFException e){
+                System.out.println("The shard coordinator closed the connection");
+            }
+            catch (IOException e){
+                if(!stopped){
+                    System.out.println("No connection to the shard coordinator at " + host + ":" + port + ": " + e);
+                }
+            }
+            finally {
+                connection = null;
+                if(session != null){
+                    session.close();
+                }
+                releaseAll();
+            }
+            try{
+                Thread.sleep(reconnectDelay);
+            }
+            catch (InterruptedException e){
+                return;
+            }
+        }
+    }
+
+    /**
+     * Act on a message of the coordinator
+     *
+     * @param message read from the coordinator
+     */
+    private void handle(ShardConnection.Message message){
+        switch (message.getOperation()){
+            case ShardConnection.ASSIGN:
+                assign(message);
+                break;
+            case ShardConnection.UNASSIGN:
+                release(message.get(0));
+                break;
+            default: //PING and unknown messages of a newer coordinator
+                break;
+        }
+    }
+
+    /**
+     * Start checking a URL, replacing its state if it is already checked.
+     * The current matches of the page are hashed before new ones are
+     * reported. The first check is spread over the default interval, so
+     * the URLs reassigned together by a rebalance are not all fetched at
+     * once. A malformed message is answered with an error and ignored
+     *
+     * @param message ASSIGN message with the URL, selector, interval and keywords
+     */
+    private void assign(ShardConnection.Message message){
+        String url = message.get(0);
+        if(message.size() < 3){
+            forward(ShardConnection.ERROR, "Shard worker " + id + " received an incomplete assignment of " + url);
+            return;
+        }
+        Long interval = null;
+        if(!message.get(2).isEmpty()){
+            try{
+                interval = Long.parseLong(message.get(2));
+            }
+            catch (NumberFormatException e){
+                forward(ShardConnection.ERROR, "Shard worker " + id + " received an invalid interval for " + url);
+                return;
+            }
+        }
+        if(dataManager.getKeywordSnapshot(url) != null){
+            release(url);
+        }
+        dataManager.addUrl(url);
+        for (int i = 3; i < message.size(); i++) {
+            dataManager.addKeyword(url, message.get(i));
+        }
+        if(!message.get(1).isEmpty()){
+            dataManager.setSelector(url, message.get(1));
+        }
+        if(interval != null){
+            dataManager.setInterval(url, interval);
+            reportedIntervals.put(url, interval);
+        }
+        threadMonitor.createThread(url, true, threadMonitor.spreadDelay());
+    }
+
+    /**
+     * Stop checking a URL
+     *
+     * @param url to stop checking
+     */
+    private void release(String url){
+        threadMonitor.stopThread(url);
+        dataManager.deleteUrl(url);
+        reportedIntervals.remove(url);
+    }
+
+    /**
+     * Stop checking all of the URLs, the coordinator assigns them again
+     * when the worker is back
+     */
+    private void releaseAll(){
+        for (String url: new ArrayList<>(dataManager.getUrls())) {
+            release(url);
+        }
+    }
+
+    /**
+     * Report the intervals learned since the last heartbeat and ping the
+     * coordinator
+     */
+    private void ping(){
+        ShardConnection session = connection;
+        if(session == null){
+            return;
+        }
+        try{
+            for (String url: dataManager.getUrls()) {
+                Long interval = dataManager.getInterval(url);
+                if(interval != null && !interval.equals(reportedIntervals.put(url, interval))){
+                    session.write(ShardConnection.INTERVAL, url, Long.toString(interval));
+                }
+            }
+            session.send(ShardConnection.PING);
+        }
+        catch (IOException e){
+            session.close(); //the reader notices and connects again
+        }
+    }
+
+    /**
+     * Forward a notification to the coordinator, it is dropped while the
+     * worker is not connected
+     *
+     * @param operation MATCH or ERROR
+     * @param arguments of the operation
+     */
+    private void forward(byte operation, String... arguments){
+        ShardConnection session = connection;
+        if(session == null){
+            return;
+        }
+        try{
+            session.send(operation, arguments);
+        }
+        catch (IOException e){
+            session.close();
+        }
+    }
+
+    /**
+     * Disconnect and stop all of the checks
+     */
+    public void shutdown(){
+        stopped = true;
+        pinger.shutdownNow();
+        ShardConnection session = connection;
+        if(session != null){
+            session.close();
+        }
+        threadMonitor.shutdown();
+        dataManager.closeNotifications();
+    }
+}
@@ -0,0 +1,329 @@
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SharedHttpClient is the single HTTP layer used by the checkers and the
+ * URL validation. Connections are kept alive and reused between requests,
+ * the number of concurrent connections to a host is capped and every
+ * request has a connect and a read timeout. A request can also have a
+ * deadline, which bounds the wait for a connection slot and the timeouts
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class SharedHttpClient {
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxConnectionsPerHost;
+    private final String userAgent;
+    private final ConcurrentHashMap<String, Semaphore> hostPermits;
+
+    /**
+     * Constructor for the SharedHttpClient class
+     *
+     * @param settings to read the timeouts and limits from
+     */
+    public SharedHttpClient(Settings settings){
+        connectTimeout = settings.getInt("connectTimeout", 10) * 1000;
+        readTimeout = settings.getInt("readTimeout", 20) * 1000;
+        maxConnectionsPerHost = settings.getInt("maxConnectionsPerHost", 4);
+        userAgent = settings.get("userAgent",
+                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/83.0 Safari/537.36");
+        hostPermits = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Size the keep-alive cache of the JDK to match the per-host connection
+     * cap. The JDK reads these system properties once, so this has to be
+     * called at startup before any HTTP connection is opened
+     *
+     * @param settings to read the per-host connection cap from
+     */
+    public static void configureKeepAlive(Settings settings){
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(settings.getInt("maxConnectionsPerHost", 4)));
+    }
+
+    /**
+     * Send a GET request
+     *
+     * @param url to request
+     * @param headers additional request headers
+     * @return response that has to be closed by the caller
+     * @throws IOException
+     */
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        return open(url, "GET", headers, 0);
+    }
+
+    /**
+     * Send a GET request that has to get its response headers before a deadline
+     *
+     * @param url to request
+     * @param headers additional request headers
+     * @param deadline System.nanoTime by which the response headers have to arrive
+     * @return response that has to be closed by the caller
+     * @throws CheckAbortedException if the deadline passes while waiting for a connection slot
+     * @throws IOException
+     */
+    public Response get(String url, Map<String, String> headers, long deadline) throws IOException {
+        return open(url, "GET", headers, deadline == 0 ? 1 : deadline); //0 stands for no deadline
+    }
+
+    /**
+     * Send a request without additional headers
+     *
+     * @param url to request
+     * @param method HTTP method
+     * @return response that has to be closed by the caller
+     * @throws IOException
+     */
+    public Response open(String url, String method) throws IOException {
+        return open(url, method, Collections.emptyMap(), 0);
+    }
+
+    /**
+     * Send a request, following redirects across protocols
+     *
+     * @param url to request
+     * @param method HTTP method
+     * @param headers additional request headers
+     * @param deadline System.nanoTime by which the response headers have to arrive, 0 for none
+     * @return response that has to be closed by the caller
+     * @throws IOException
+     */
+    private Response open(String url, String method, Map<String, String> headers, long deadline) throws IOException {
+        URL target = new URL(url);
+        for (int redirects = 0; ; redirects++) {
+            Semaphore permits = acquire(target, deadline);
+            HttpURLConnection connection = null;
+            try{
+                connection = (HttpURLConnection) target.openConnection();
+                connection.setConnectTimeout(timeout(connectTimeout, deadline));
+                connection.setReadTimeout(timeout(readTimeout, deadline));
+                connection.setInstanceFollowRedirects(false);
+                connection.setRequestMethod(method);
+                connection.setRequestProperty("User-Agent", userAgent);
+                for (Map.Entry<String, String> header: headers.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+                int status = connection.getResponseCode();
+                String location = connection.getHeaderField("Location");
+                if(isRedirect(status) && location != null && redirects < MAX_REDIRECTS){
+                    URL next = new URL(target, location); //resolved first, a bad location must not release the slot twice
+                    new Response(connection, permits, target).close();
+                    target = next;
+                    continue;
+                }
+                return new Response(connection, permits, target);
+            }
+            catch (IOException | RuntimeException e){
+                if(connection != null){
+                    connection.disconnect();
+                }
+                permits.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Wait for a free connection slot to the host of a URL
+     *
+     * @param url to connect to
+     * @param deadline System.nanoTime after which the wait is given up, 0 for none
+     * @return semaphore the slot was taken from
+     * @throws CheckAbortedException if the deadline passed while waiting
+     * @throws IOException if the thread was interrupted while waiting
+     */
+    private Semaphore acquire(URL url, long deadline) throws IOException {
+        String host = url.getHost().toLowerCase() + ":" + (url.getPort() == -1 ? url.getDefaultPort() : url.getPort());
+        Semaphore permits = hostPermits.computeIfAbsent(host, key -> new Semaphore(maxConnectionsPerHost));
+        try{
+            if(deadline == 0){
+                permits.acquire();
+            }
+            else if(!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)){
+                throw new CheckAbortedException("the check took longer than its time budget waiting for a connection to " + host);
+            }
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + host);
+        }
+        return permits;
+    }
+
+    /**
+     * @param timeout configured timeout in milliseconds
+     * @param deadline System.nanoTime of the deadline of the request, 0 for none
+     * @return timeout in milliseconds that does not run past the deadline
+     * @throws CheckAbortedException if the deadline has passed
+     */
+    private static int timeout(int timeout, long deadline) throws CheckAbortedException {
+        if(deadline == 0){
+            return timeout;
+        }
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if(remaining <= 0){
+            throw new CheckAbortedException("the check took longer than its time budget");
+        }
+        return (int) Math.min(timeout == 0 ? Integer.MAX_VALUE : timeout, remaining); //0 would wait forever
+    }
+
+    /**
+     * @param status HTTP status code
+     * @return true if the status code is a redirect
+     */
+    private static boolean isRedirect(int status){
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    /**
+     * A response whose connection slot is held until it is closed. Closing
+     * the response reads the rest of a short body, so that the connection
+     * can return to the keep-alive pool, and drops the connection otherwise
+     */
+    public static class Response implements Closeable {
+
+        private final HttpURLConnection connection;
+        private final Semaphore permits;
+        private final URL url;
+        private InputStream body;
+        private boolean closed;
+
+        private Response(HttpURLConnection connection, Semaphore permits, URL url){
+            this.connection = connection;
+            this.permits = permits;
+            this.url = url;
+        }
+
+        /**
+         * @return HTTP status code
+         * @throws IOException
+         */
+        public int getStatus() throws IOException {
+            return connection.getResponseCode();
+        }
+
+        /**
+         * @param name of the header
+         * @return value of the response header or null
+         */
+        public String getHeader(String name){
+            return connection.getHeaderField(name);
+        }
+
+        /**
+         * @return final URL of the response after redirects
+         */
+        public String getUrl(){
+            return url.toString();
+        }
+
+        /**
+         * @return supported charset declared in the Content-Type header or null
+         */
+        public String getCharset(){
+            String contentType = connection.getContentType();
+            if(contentType != null){
+                for (String parameter: contentType.split(";")) {
+                    parameter = parameter.trim();
+                    if(parameter.toLowerCase().startsWith("charset=")){
+                        String charset = parameter.substring("charset=".length()).replace("\"", "").trim();
+                        try{
+                            return Charset.isSupported(charset) ? charset : null;
+                        }
+                        catch (IllegalArgumentException e){
+                            return null; //malformed name, the page declares its charset or UTF-8 is used
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return response body, or the error body for 4xx and 5xx responses
+         * @throws IOException
+         */
+        public InputStream getBody() throws IOException {
+            if(body == null){
+                body = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                if(body == null){
+                    body = new ByteArrayInputStream(new byte[0]);
+                }
+            }
+            return body;
+        }
+
+        /**
+         * Abort the transfer from another thread, a blocked read of the
+         * body fails and the connection is not reused
+         */
+        public void abort(){
+            connection.disconnect();
+        }
+
+        /**
+         * Close the body and release the connection slot
+         */
+        @Override
+        public void close() {
+            if(closed){
+                return;
+            }
+            closed = true;
+            try{
+                InputStream body = getBody();
+                if(drain(body)){
+                    body.close(); //read to the end, the connection can be reused
+                }
+                else{
+                    connection.disconnect(); //too much left, a new connection is cheaper than reading it
+                }
+            }
+            catch (IOException e){
+                connection.disconnect();
+            }
+            finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Read the part of the body that was not consumed, up to DRAIN_LIMIT bytes
+         *
+         * @param body to read
+         * @return true if the end of the body was reached
+         * @throws IOException
+         */
+        private static boolean drain(InputStream body) throws IOException {
+            byte[] buffer = new byte[8192];
+            int remaining = DRAIN_LIMIT;
+            while(remaining > 0){
+                int read = body.read(buffer, 0, Math.min(buffer.length, remaining));
+                if(read == -1){
+                    return true;
+                }
+                remaining -= read;
+            }
+            return body.read() == -1;
+        }
+    }
+}
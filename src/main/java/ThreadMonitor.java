@@ -1,19 +1,29 @@
-import java.util.ArrayList;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Set;
 
 /**
  * ThreadMonitor class is responsible for creating and updating the
- * CheckerThread objects
+ * CheckerThread objects and scheduling them on the CheckScheduler.
+ * URLs with the same canonical key and CSS selector share one
+ * CheckerThread, which is scheduled under that key
  *
  * @version 0.4
  * @author Albert Shakirzianov
  */
 public class ThreadMonitor implements Runnable{
 
-    private final HashMap<CheckerThread, Thread> threadMap;
     private final HashMap<String, CheckerThread> checkerMap;
     private final DataManager dataManager;
+    private final CheckScheduler scheduler;
+    private final SharedHttpClient httpClient;
+    private final boolean streaming;
+    private final MonitorMetrics metrics;
+    private final AdaptiveInterval adaptiveInterval;
+    private final Settings settings;
 
     /**
      * Constructor for the ThreadMonitor class
@@ -21,9 +31,22 @@ public class ThreadMonitor implements Runnable{
      * @param dataManager
      */
     public ThreadMonitor(DataManager dataManager){
-        threadMap = new HashMap<>();
         checkerMap = new HashMap<>();
         this.dataManager = dataManager;
+        settings = dataManager.getSettings();
+        httpClient = new SharedHttpClient(settings);
+        streaming = settings.getBoolean("streaming", false);
+        long interval = settings.getLong("interval", 30);
+        adaptiveInterval = settings.getBoolean("adaptiveIntervals", false)
+                ? new AdaptiveInterval(settings.getLong("minInterval", interval) * 1000, settings.getLong("maxInterval", 3600) * 1000)
+                : null;
+        scheduler = new CheckScheduler(
+                settings.getInt("concurrency", 16),
+                interval * 1000,
+                settings.getBoolean("virtualThreads", false),
+                settings.getLong("schedulerTick", 100),
+                settings.getInt("intervalJitter", 10) / 100.0);
+        metrics = new MonitorMetrics(dataManager, scheduler);
     }
 
     /**
@@ -36,30 +59,92 @@ public class ThreadMonitor implements Runnable{
 
     /**
      * Acquire a set of all saved URLs and call the createThread method
-     * to create a CheckerThread object for each of the URLs
+     * to create a CheckerThread object for each of the URLs. The first
+     * checks are spread over the default interval, so the saved URLs are
+     * not all checked at once
      */
-    public void startThreads(){
-        Set<String> urlList = dataManager.getUrlKeyMap().keySet();
+    synchronized public void startThreads(){
+        Set<String> urlList = dataManager.getUrls();
+        boolean hashingRequired = !dataManager.isWarmStart(); //the saved fingerprints already cover the saved URLs
         if (!urlList.isEmpty()){
             for (String url: urlList) {
-                createThread(url);
+                createThread(url, hashingRequired, scheduler.spreadDelay());
             }
         }
     }
 
     /**
-     * Create a CheckerThread object
+     * Get a delay within the default interval, used to spread the first
+     * checks of the URLs that are added together
+     *
+     * @return random delay in milliseconds
+     */
+    public long spreadDelay(){
+        return scheduler.spreadDelay();
+    }
+
+    /**
+     * Create a CheckerThread object for a new URL and schedule its checks
+     *
+     * @param url for the CheckerThread to monitor
+     */
+    public void createThread(String url){
+        createThread(url, true);
+    }
+
+    /**
+     * Create the CheckerThread objects for a batch of new URLs
+     *
+     * @param urls for the CheckerThreads to monitor
+     */
+    synchronized public void createThreads(Collection<String> urls){
+        for (String url: urls) {
+            createThread(url, true);
+        }
+    }
+
+    /**
+     * Add a URL to the CheckerThread of its canonical key, creating and
+     * scheduling the CheckerThread if the key is not checked yet
+     *
+     * @param url for the CheckerThread to monitor
+     * @param hashingRequired hash the current matches before reporting new ones
+     */
+    synchronized public void createThread(String url, boolean hashingRequired){
+        createThread(url, hashingRequired, 0);
+    }
+
+    /**
+     * Add a URL to the CheckerThread of its canonical key
      *
      * @param url for the CheckerThread to monitor
+     * @param hashingRequired hash the current matches before reporting new ones
+     * @param initialDelay before the first check in milliseconds, 0 to check the URL right away
      */
-    synchronized public void createThread(String url){
-        ArrayList<String> keywords = dataManager.getKeywords(url);
-        CheckerThread checker = new CheckerThread(this, url, keywords);
-        Thread thread = new Thread(checker);
-        threadMap.put(checker, thread);
-        checkerMap.put(url, checker);
-        System.out.println(thread.toString() + " is created");
-        thread.start();
+    synchronized public void createThread(String url, boolean hashingRequired, long initialDelay){
+        String key = checkKey(url);
+        CheckerThread checker = checkerMap.get(key);
+        Long learned = dataManager.getInterval(url);
+        if(checker == null){
+            checker = new CheckerThread(this, key, url, dataManager.getSelector(url));
+            checker.addUrl(url, hashingRequired);
+            checkerMap.put(key, checker);
+            scheduler.schedule(key, checker, initialDelay);
+            if(adaptiveInterval != null && learned != null){
+                scheduler.setInterval(key, adaptiveInterval.clamp(learned));
+            }
+            System.out.println("Checker for " + url + " is scheduled");
+        }
+        else{
+            checker.addUrl(url, hashingRequired);
+            if(adaptiveInterval != null && learned != null){ //the shared check runs as often as its most frequent URL needs
+                scheduler.setInterval(key, adaptiveInterval.clamp(Math.min(learned, scheduler.getInterval(key))));
+            }
+            if(initialDelay == 0){
+                scheduler.trigger(key);
+            }
+            System.out.println("Checker for " + url + " shares the fetch of " + checker.getFetchUrl());
+        }
     }
 
     /**
@@ -68,20 +153,136 @@ public class ThreadMonitor implements Runnable{
      *
      * @param url
      */
-    public void requestHashing(String url){
-        CheckerThread checker = checkerMap.get(url);
-        checker.requestHashing();
-        threadMap.get(checker).interrupt();
+    synchronized public void requestHashing(String url){
+        String key = checkKey(url);
+        CheckerThread checker = checkerMap.get(key);
+        checker.requestHashing(url);
+        scheduler.trigger(key);
+    }
+
+    /**
+     * Stop checking a URL, the shared check stops with its last URL
+     *
+     * @param url
+     */
+    synchronized public void stopThread(String url){
+        String key = checkKey(url);
+        CheckerThread checker = checkerMap.get(key);
+        if(checker == null){
+            return;
+        }
+        checker.removeUrl(url);
+        if(checker.isEmpty()){
+            checkerMap.remove(key);
+            scheduler.cancel(key);
+            metrics.remove(key);
+        }
+    }
+
+    /**
+     * Scope the checks of a URL to a CSS selector. The URL moves to the
+     * CheckerThread of its new key and its current matches are hashed again
+     *
+     * @param url of a monitored page
+     * @param selector to scope the checks to, null or empty to check the whole page
+     */
+    synchronized public void setSelector(String url, String selector){
+        stopThread(url);
+        dataManager.setSelector(url, selector);
+        createThread(url, true);
+    }
+
+    /**
+     * Get the key of the CheckerThread of a URL, URLs that share a key
+     * share a fetch
+     *
+     * @param url to get the key of
+     * @return canonical key of the URL followed by its CSS selector, if any
+     */
+    private String checkKey(String url){
+        String selector = dataManager.getSelector(url);
+        String key = URLFormatter.canonicalKey(url);
+        return selector == null ? key : key + " " + selector; //a canonical URL contains no spaces
     }
 
     /**
-     * Stop a CheckerThread thread
+     * Set the interval between the checks of a URL, shared with the URLs
+     * that have the same canonical key
      *
      * @param url
+     * @param seconds between two checks
+     */
+    public void setInterval(String url, long seconds){
+        scheduler.setInterval(checkKey(url), seconds * 1000);
+    }
+
+    /**
+     * Adapt the interval of a shared check to the result of a check
+     *
+     * @param key canonical key of the checked URLs
+     * @param changed true if the page changed since the previous check
+     */
+    synchronized public void pageChecked(String key, boolean changed){
+        CheckerThread checker = checkerMap.get(key);
+        if(adaptiveInterval != null && checker != null){
+            long interval = adaptiveInterval.next(scheduler.getInterval(key), changed);
+            scheduler.setInterval(key, interval);
+            for (String url: checker.getUrls()) {
+                dataManager.setInterval(url, interval);
+            }
+        }
+    }
+
+    /**
+     * Get the keywords of a URL without locking
+     *
+     * @param url to look up
+     * @return current keyword snapshot or null if the URL is not monitored
+     */
+    public KeywordSnapshot getKeywords(String url){
+        return dataManager.getKeywordSnapshot(url);
+    }
+
+    /**
+     * Create the fetcher of a URL with the size and time budget of its
+     * host, a budget set for the host overrides the default one
+     *
+     * @param url to fetch
+     * @return fetcher of the URL
+     */
+    public PageFetcher newFetcher(String url){
+        String host = "";
+        try{
+            host = new URL(url).getHost().toLowerCase(Locale.ROOT);
+        }
+        catch (MalformedURLException e){
+            //the fetch reports the invalid URL
+        }
+        long maxPageSize = settings.getLong("maxPageSize." + host, settings.getLong("maxPageSize", 10240));
+        long maxCheckTime = settings.getLong("maxCheckTime." + host, settings.getLong("maxCheckTime", 60));
+        return new PageFetcher(url, httpClient, maxPageSize * 1024, maxCheckTime * 1000);
+    }
+
+    /**
+     * @return HTTP client shared by the checkers
+     */
+    public SharedHttpClient getHttpClient(){ return httpClient; }
+
+    /**
+     * @return metrics of the checks, published through JMX
+     */
+    public MonitorMetrics getMetrics(){ return metrics; }
+
+    /**
+     * @return true if the checkers should match the text as it is downloaded
+     */
+    public boolean isStreaming(){ return streaming; }
+
+    /**
+     * Stop all of the checks
      */
-    public void stopThread(String url){
-        CheckerThread checker = checkerMap.get(url);
-        checker.stopRunning();
+    public void shutdown(){
+        scheduler.shutdown();
     }
 
     /**
@@ -94,13 +295,28 @@ public class ThreadMonitor implements Runnable{
         return dataManager.addHashIfNotExcluded(str);
     }
 
+    /**
+     * Check if a fingerprint has been stored by the DataManager object
+     *
+     * @param fingerprint of the input String
+     * @return true if the fingerprint was already stored
+     */
+    public boolean addFingerprintIfNotExcluded(long fingerprint) {
+        return dataManager.addFingerprintIfNotExcluded(fingerprint);
+    }
+
+    /**
+     * Write the newly added fingerprints to disk
+     */
+    public void flushFingerprints(){
+        dataManager.flushFingerprints();
+    }
+
     /**
      * Force search on all of the CheckerThread
      */
     public void refresh(){
-        for (Thread thread: threadMap.values()) {
-            thread.interrupt();
-        }
+        scheduler.triggerAll();
     }
 
     /**
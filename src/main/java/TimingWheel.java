@@ -0,0 +1,272 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * TimingWheel is a hierarchical hashed timing wheel driven by a single
+ * thread. Time advances in ticks, level 0 has one bucket per tick and every
+ * higher level has buckets that span a whole turn of the level below. A
+ * timeout is linked into the bucket of its deadline, so scheduling,
+ * cancelling and rescheduling take constant time however many timeouts are
+ * pending. When a level turns over, the timeouts of the next bucket of the
+ * level above cascade down to finer buckets
+ *
+ * Timeouts fire on the timer thread with a precision of one tick, their
+ * tasks should only hand the work over to other threads
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class TimingWheel {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final long MAX_TICKS = (1L << (LEVELS * SLOT_BITS)) - 1; //13 years with a tick of 100 ms
+
+    private final long tickNanos;
+    private final Timeout[][] buckets;
+    private final LongSupplier clock;
+    private final long start;
+    private final Thread thread;
+    private long currentTick;
+    private int pending;
+    private volatile boolean stopped;
+
+    /**
+     * Constructor for the TimingWheel class
+     *
+     * @param tickMillis length of a tick in milliseconds
+     * @param threadName name of the timer thread
+     */
+    public TimingWheel(long tickMillis, String threadName){
+        this(tickMillis, System::nanoTime, threadName);
+    }
+
+    /**
+     * Constructor for a TimingWheel without a timer thread, it advances only
+     * when runDueTasks is called and reads the time from the given clock
+     *
+     * @param tickMillis length of a tick in milliseconds
+     * @param clock returning the time in nanoseconds
+     */
+    TimingWheel(long tickMillis, LongSupplier clock){
+        this(tickMillis, clock, null);
+    }
+
+    /**
+     * @param tickMillis length of a tick in milliseconds
+     * @param clock returning the time in nanoseconds
+     * @param threadName name of the timer thread, or null to not start one
+     */
+    private TimingWheel(long tickMillis, LongSupplier clock, String threadName){
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        buckets = new Timeout[LEVELS][SLOTS]; //each bucket is the head of a doubly linked list
+        this.clock = clock;
+        start = clock.getAsLong();
+        if(threadName == null){
+            thread = null;
+        }
+        else{
+            thread = new Thread(this::tickLoop, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Run a task after a delay
+     *
+     * @param task to run on the timer thread
+     * @param delay in milliseconds
+     * @return timeout that cancels or reschedules the task
+     */
+    public Timeout schedule(Runnable task, long delay){
+        Timeout timeout = new Timeout(task);
+        reschedule(timeout, delay);
+        return timeout;
+    }
+
+    /**
+     * Move a timeout to a new deadline, scheduling it again if it has fired
+     * or was cancelled
+     *
+     * @param timeout to move
+     * @param delay from now in milliseconds
+     */
+    synchronized public void reschedule(Timeout timeout, long delay){
+        unlink(timeout);
+        long elapsed = clock.getAsLong() - start;
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay)); //saturates for very long delays
+        long ticks = elapsed / tickNanos + Math.min(delayNanos / tickNanos, MAX_TICKS) //rounded up without overflowing
+                + (elapsed % tickNanos + delayNanos % tickNanos + tickNanos - 1) / tickNanos;
+        timeout.deadline = Math.min(Math.max(ticks, currentTick + 1), currentTick + MAX_TICKS);
+        link(timeout);
+    }
+
+    /**
+     * Stop a timeout from firing
+     *
+     * @param timeout to cancel
+     */
+    synchronized public void cancel(Timeout timeout){
+        unlink(timeout);
+    }
+
+    /**
+     * @return number of timeouts waiting to fire
+     */
+    synchronized public int getPending(){
+        return pending;
+    }
+
+    /**
+     * Stop the timer thread, pending timeouts never fire
+     */
+    public void shutdown(){
+        stopped = true;
+        if(thread != null){
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Put a timeout into the bucket of its deadline, on the lowest level
+     * whose turn reaches the deadline
+     *
+     * @param timeout with the deadline set
+     */
+    private void link(Timeout timeout){
+        long delta = timeout.deadline - currentTick;
+        int level = 0;
+        while(level < LEVELS - 1 && delta >= 1L << ((level + 1) * SLOT_BITS)){
+            level++;
+        }
+        int slot = (int) (timeout.deadline >>> (level * SLOT_BITS)) & MASK;
+        Timeout head = buckets[level][slot];
+        timeout.next = head;
+        if(head != null){
+            head.previous = timeout;
+        }
+        timeout.previous = null;
+        timeout.level = level;
+        timeout.slot = slot;
+        buckets[level][slot] = timeout;
+        pending++;
+    }
+
+    /**
+     * Take a timeout out of its bucket, if it is in one
+     *
+     * @param timeout to remove
+     */
+    private void unlink(Timeout timeout){
+        if(timeout.level == -1){
+            return;
+        }
+        if(timeout.previous != null){
+            timeout.previous.next = timeout.next;
+        }
+        else{
+            buckets[timeout.level][timeout.slot] = timeout.next;
+        }
+        if(timeout.next != null){
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.level = -1;
+        pending--;
+    }
+
+    /**
+     * Advance the wheel by one tick, cascading the buckets of the higher
+     * levels that turn over and collecting the timeouts that are due
+     *
+     * @param expired list to add the tasks of the due timeouts to
+     */
+    private void advance(List<Runnable> expired){
+        currentTick++;
+        for (int level = 1; level < LEVELS && (currentTick & ((1L << (level * SLOT_BITS)) - 1)) == 0; level++) {
+            int slot = (int) (currentTick >>> (level * SLOT_BITS)) & MASK;
+            Timeout timeout = buckets[level][slot];
+            while(timeout != null){
+                Timeout next = timeout.next;
+                unlink(timeout);
+                link(timeout); //closer to its deadline now, so it lands on a lower level
+                timeout = next;
+            }
+        }
+        int slot = (int) currentTick & MASK;
+        Timeout timeout = buckets[0][slot];
+        while(timeout != null){
+            Timeout next = timeout.next;
+            unlink(timeout);
+            expired.add(timeout.task);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Body of the timer thread
+     */
+    private void tickLoop(){
+        List<Runnable> expired = new ArrayList<>();
+        while(!stopped){
+            LockSupport.parkNanos(this, runDueTasks(expired));
+        }
+    }
+
+    /**
+     * Catch up on the ticks that passed since the last call and run the due
+     * tasks outside of the lock
+     *
+     * @param expired empty list to collect the due tasks in
+     * @return time until the next tick in nanoseconds
+     */
+    long runDueTasks(List<Runnable> expired){
+        long wait;
+        synchronized (this){
+            long now = clock.getAsLong() - start;
+            while((currentTick + 1) * tickNanos <= now){
+                advance(expired);
+            }
+            wait = (currentTick + 1) * tickNanos - now;
+        }
+        for (Runnable task: expired) {
+            try{
+                task.run();
+            }
+            catch (RuntimeException e){
+                e.printStackTrace();
+            }
+        }
+        expired.clear();
+        return wait;
+    }
+
+    /**
+     * A task waiting in the wheel. The fields are guarded by the wheel
+     */
+    public static class Timeout {
+
+        private final Runnable task;
+        private long deadline;
+        private int level = -1;
+        private int slot;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(Runnable task){
+            this.task = task;
+        }
+
+        /**
+         * @return tick the timeout is due on, read by the tests
+         */
+        long getDeadline(){ return deadline; }
+    }
+}
@@ -1,8 +1,12 @@
 import org.apache.commons.validator.routines.UrlValidator;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * URLFormatter class is responsible for formatting and verifying the connection
@@ -13,27 +17,124 @@ import java.net.URL;
  */
 public class URLFormatter {
 
+    private static final Set<String> TRACKING_PARAMETERS = new HashSet<>(Arrays.asList(
+            "gclid", "dclid", "fbclid", "msclkid", "yclid", "mc_cid", "mc_eid", "_ga", "_hsenc", "_hsmi"));
+
+    private final SharedHttpClient client;
+
     /**
      * Constructor for the URLFormatter class
+     *
+     * @param client shared HTTP client to verify the connections with
      */
-    public URLFormatter(){}
+    public URLFormatter(SharedHttpClient client){
+        this.client = client;
+    }
 
     /**
      * A method that takes in the URL String and returns a formatted version
-     * in the form http://url/
+     * in the canonical form, adding http:// if the scheme is missing
      *
      * @param url String input
      * @return formatted URL String
      */
     public String formatURL(String url){
         if(url.contains("http://") || url.contains("https://")){
-            return url;
+            return canonicalize(url);
         }
         else{
-            return "http://" + url + "/";
+            return canonicalize("http://" + url + "/");
+        }
+    }
+
+    /**
+     * Bring a URL to its canonical form: lowercase scheme and host, no
+     * default port, no fragment, no tracking parameters and no trailing
+     * slash except for the root path
+     *
+     * @param url to canonicalize
+     * @return canonical URL, or the URL unchanged if it cannot be parsed
+     */
+    public static String canonicalize(String url){
+        try{
+            URI uri = new URI(url.trim());
+            String host = uri.getHost();
+            if(uri.getScheme() == null || host == null){
+                return url;
+            }
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            host = host.toLowerCase(Locale.ROOT);
+            if(host.endsWith(".")){
+                host = host.substring(0, host.length() - 1);
+            }
+            int port = uri.getPort();
+            if((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"))){
+                port = -1;
+            }
+            String path = uri.getRawPath();
+            if(path == null || path.isEmpty()){
+                path = "/";
+            }
+            else if(path.length() > 1 && path.endsWith("/")){
+                path = path.substring(0, path.length() - 1);
+            }
+            StringBuilder builder = new StringBuilder(scheme).append("://");
+            if(uri.getRawUserInfo() != null){
+                builder.append(uri.getRawUserInfo()).append('@');
+            }
+            builder.append(host);
+            if(port != -1){
+                builder.append(':').append(port);
+            }
+            builder.append(path);
+            String query = removeTracking(uri.getRawQuery());
+            if(!query.isEmpty()){
+                builder.append('?').append(query);
+            }
+            return builder.toString();
+        }
+        catch (URISyntaxException e){
+            return url;
         }
     }
 
+    /**
+     * Get the key that URLs pointing at the same resource share. It is the
+     * canonical URL without the scheme, so http and https versions of a page
+     * are fetched once
+     *
+     * @param url to get the key of
+     * @return canonical resource key
+     */
+    public static String canonicalKey(String url){
+        String canonical = canonicalize(url);
+        int separator = canonical.indexOf("://");
+        return separator == -1 ? canonical : canonical.substring(separator + 1);
+    }
+
+    /**
+     * @param query raw query of a URL or null
+     * @return query without the tracking parameters, possibly empty
+     */
+    private static String removeTracking(String query){
+        if(query == null){
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String parameter: query.split("&")) {
+            String name = parameter.contains("=") ? parameter.substring(0, parameter.indexOf('=')) : parameter;
+            name = name.toLowerCase(Locale.ROOT);
+            if(parameter.isEmpty() || name.startsWith("utm_") || TRACKING_PARAMETERS.contains(name)){
+                continue;
+            }
+            if(builder.length() > 0){
+                builder.append('&');
+            }
+            builder.append(parameter);
+        }
+        return builder.toString();
+    }
+
     /**
      * Check if the URL is valid
      *
@@ -46,18 +147,33 @@ public class URLFormatter {
     }
 
     /**
-     * Check if an HTTP connection could be established
+     * Check if an HTTP connection could be established. A HEAD request is
+     * sent first so that no page has to be downloaded, GET is only tried
+     * when the server does not accept HEAD
      *
      * @param str_url String URL
      * @return true if the HTTP response code is 2** or 3**
      * @throws IOException
      */
     public boolean pingURL(String str_url) throws IOException {
-        URL url = new URL(str_url);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        System.out.println(connection.getResponseCode());
-        char codeType = Integer.toString(connection.getResponseCode()).charAt(0);
-        return codeType == '2' || codeType == '3';
+        int status = ping(str_url, "HEAD");
+        if(status >= 400 && status != 404 && status != 410){ //some servers reject HEAD but serve GET
+            status = ping(str_url, "GET");
+        }
+        System.out.println(status + " " + str_url);
+        return status >= 200 && status < 400;
+    }
+
+    /**
+     * @param url to request
+     * @param method HTTP method
+     * @return HTTP status code
+     * @throws IOException
+     */
+    private int ping(String url, String method) throws IOException {
+        try (SharedHttpClient.Response response = client.open(url, method)) {
+            return response.getStatus();
+        }
     }
 
 }
@@ -0,0 +1,184 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * URLImporter validates a list of URLs in the background. The URLs are
+ * formatted and checked for syntax first, then probed concurrently by a
+ * bounded number of threads, so a long list neither blocks the caller nor
+ * floods the monitored servers. The per-host connection cap of the
+ * SharedHttpClient still applies to the probes
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class URLImporter {
+
+    /**
+     * Receives the progress and the result of an import, called from the
+     * threads of the importer
+     */
+    public interface ImportListener {
+
+        /**
+         * @param done number of URLs validated so far
+         * @param total number of URLs to validate
+         */
+        void progress(int done, int total);
+
+        /**
+         * @param result of the import
+         */
+        void finished(Result result);
+    }
+
+    private final URLFormatter formatter;
+    private final int parallelism;
+
+    /**
+     * Constructor for the URLImporter class
+     *
+     * @param formatter to format, validate and probe the URLs with
+     * @param parallelism maximum number of URLs probed at the same time
+     */
+    public URLImporter(URLFormatter formatter, int parallelism){
+        this.formatter = formatter;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Split a list of URLs separated by whitespace or commas, lines starting
+     * with '#' are comments
+     *
+     * @param reader to read the list from
+     * @return URLs in the order they were listed
+     * @throws IOException
+     */
+    public static List<String> readList(Reader reader) throws IOException {
+        List<String> urls = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while((line = lines.readLine()) != null){
+            line = line.trim();
+            if(line.startsWith("#")){
+                continue;
+            }
+            for (String url: line.split("[\\s,]+")) {
+                if(!url.isEmpty()){
+                    urls.add(url);
+                }
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Validate the URLs in the background. Duplicates and URLs matched by
+     * the monitored predicate are skipped, the result lists the formatted
+     * URLs that could be reached
+     *
+     * @param inputs URLs as entered by the user
+     * @param monitored tells which formatted URLs are already monitored
+     * @param listener to report the progress and the result to
+     */
+    public void validate(Collection<String> inputs, Predicate<String> monitored, ImportListener listener){
+        Result result = new Result();
+        LinkedHashSet<String> urls = new LinkedHashSet<>();
+        for (String input: inputs) {
+            String url = formatter.formatURL(input.trim());
+            if(monitored.test(url) || urls.contains(url)){
+                result.skipped++;
+            }
+            else if(!formatter.validateURL(url)){
+                result.rejected.put(url, "Invalid URL");
+            }
+            else{
+                urls.add(url);
+            }
+        }
+        int total = urls.size();
+        if(total == 0){
+            listener.finished(result);
+            return;
+        }
+        String[] reasons = new String[total]; //filled by the probes, null if the URL could be reached
+        AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, total), runnable -> {
+            Thread thread = new Thread(runnable, "import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int index = 0;
+        for (String url: urls) {
+            int slot = index++;
+            executor.execute(() -> {
+                reasons[slot] = probe(url);
+                int count = done.incrementAndGet();
+                listener.progress(count, total);
+                if(count == total){ //the last probe collects the results in the order of the list
+                    int i = 0;
+                    for (String validated: urls) {
+                        if(reasons[i] == null){
+                            result.accepted.add(validated);
+                        }
+                        else{
+                            result.rejected.put(validated, reasons[i]);
+                        }
+                        i++;
+                    }
+                    listener.finished(result);
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * @param url to probe
+     * @return null if the URL could be reached, the reason otherwise
+     */
+    private String probe(String url){
+        try{
+            return formatter.pingURL(url) ? null : "Unable to connect to the URL";
+        }
+        catch (IOException | RuntimeException e){
+            return "Unable to connect to the URL: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Result of an import
+     */
+    public static class Result {
+
+        private final List<String> accepted = new ArrayList<>();
+        private final Map<String, String> rejected = new LinkedHashMap<>();
+        private int skipped;
+
+        /**
+         * @return formatted URLs that could be reached
+         */
+        public List<String> getAccepted(){ return Collections.unmodifiableList(accepted); }
+
+        /**
+         * @return formatted URLs that were rejected, with the reason
+         */
+        public Map<String, String> getRejected(){ return Collections.unmodifiableMap(rejected); }
+
+        /**
+         * @return number of duplicate or already monitored URLs
+         */
+        public int getSkipped(){ return skipped; }
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MatchSink that posts the notifications as JSON to a webhook URL
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class WebhookSink implements MatchSink {
+
+    private final String webhookUrl;
+
+    /**
+     * Constructor for the WebhookSink class
+     *
+     * @param webhookUrl to post the notifications to
+     */
+    public WebhookSink(String webhookUrl){
+        this.webhookUrl = webhookUrl;
+    }
+
+    @Override
+    public void matchFound(String url, String keyword) {
+        post("{\"event\":\"match\",\"url\":" + quote(url) + ",\"keyword\":" + quote(keyword) + "}");
+    }
+
+    @Override
+    public void error(String message) {
+        post("{\"event\":\"error\",\"message\":" + quote(message) + "}");
+    }
+
+    /**
+     * Post a JSON document to the webhook
+     *
+     * @param json document to post
+     */
+    private void post(String json){
+        HttpURLConnection connection = null;
+        try{
+            connection = (HttpURLConnection) new URL(webhookUrl).openConnection();
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(10000);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+            int code = connection.getResponseCode();
+            if(code >= 300){
+                System.err.println("Webhook " + webhookUrl + " responded with " + code);
+            }
+        }
+        catch (IOException e){
+            System.err.println("Unable to post to " + webhookUrl + ": " + e.getMessage());
+        }
+        finally {
+            if(connection != null){
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Quote a String as a JSON string literal
+     *
+     * @param str to quote
+     * @return JSON string literal
+     */
+    private static String quote(String str){
+        StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if(c == '"' || c == '\\'){
+                builder.append('\\').append(c);
+            }
+            else if(c < 0x20){
+                builder.append(String.format("\\u%04x", (int) c));
+            }
+            else{
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,69 @@
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CheckSchedulerTest checks the jitter of the check intervals and that
+ * cancelled checks stop running
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class CheckSchedulerTest {
+
+    @Test
+    public void jitterStaysWithinItsFraction(){
+        CheckScheduler scheduler = new CheckScheduler(1, 1000, false, 10, 0.2);
+        try{
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i < 10000; i++) {
+                long interval = scheduler.jittered(1000);
+                assertTrue(interval + " is outside of the jitter", interval >= 800 && interval <= 1200);
+                seen.add(interval);
+            }
+            assertTrue(seen.size() > 100);
+            assertEquals(4, scheduler.jittered(4)); //too short to move
+        }
+        finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void jitterIsCappedAtHalfOfTheInterval(){
+        CheckScheduler withoutJitter = new CheckScheduler(1, 1000, false, 10, 0);
+        CheckScheduler capped = new CheckScheduler(1, 1000, false, 10, 3);
+        try{
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(1000, withoutJitter.jittered(1000));
+                long interval = capped.jittered(1000);
+                assertTrue(interval >= 500 && interval <= 1500);
+            }
+        }
+        finally {
+            withoutJitter.shutdown();
+            capped.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelledCheckStopsRunning() throws InterruptedException {
+        CheckScheduler scheduler = new CheckScheduler(2, 20, false, 1, 0.1);
+        try{
+            CountDownLatch started = new CountDownLatch(3);
+            scheduler.schedule("http://a.com/", started::countDown, 0);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            scheduler.cancel("http://a.com/");
+            assertEquals(0, scheduler.getWaiting());
+        }
+        finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LogStoreTest checks the translation between list indexes and stable IDs of
+ * the LogStore while entries are removed, paged out and compacted, against
+ * a plain list of the same entries
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class LogStoreTest {
+
+    private final List<LogStore> stores = new ArrayList<>();
+
+    @After
+    public void tearDown(){
+        for (LogStore store: stores) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void idsSurviveRemovals(){
+        LogStore store = create(4);
+        for (int i = 0; i < 10; i++) {
+            store.add("e" + i);
+        }
+        long[] ids = new long[10];
+        for (int i = 0; i < 10; i++) {
+            ids[i] = store.getId(i);
+        }
+
+        assertTrue(store.removeById(ids[1])); //paged out
+        assertTrue(store.removeById(ids[8])); //in memory
+        assertEquals("e3", store.remove(2));
+
+        assertEquals(Arrays.asList("e0", "e2", "e4", "e5", "e6", "e7", "e9"), new ArrayList<>(store));
+        assertEquals(-1, store.indexOfId(ids[1]));
+        assertEquals(-1, store.indexOfId(ids[3]));
+        assertFalse(store.removeById(ids[8]));
+        assertEquals(0, store.indexOfId(ids[0]));
+        assertEquals(1, store.indexOfId(ids[2]));
+        assertEquals(6, store.indexOfId(ids[9]));
+        assertEquals(ids[4], store.getId(2));
+        assertEquals("e9", store.get(store.indexOfId(ids[9])));
+    }
+
+    @Test
+    public void compactionKeepsTheIdsOfTheLiveEntries(){
+        LogStore store = create(8);
+        List<Long> liveIds = new ArrayList<>();
+        List<String> live = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            store.add("e" + i);
+            if(i % 10 == 0){
+                live.add("e" + i);
+                liveIds.add(store.getId(store.size() - 1));
+            }
+        }
+        for (int i = 199; i >= 0; i--) { //removing 180 of the 200 entries compacts the log
+            if(i % 10 != 0){
+                store.remove(i);
+            }
+        }
+
+        assertEquals(live, new ArrayList<>(store));
+        for (int i = 0; i < live.size(); i++) {
+            assertEquals(liveIds.get(i).longValue(), store.getId(i));
+            assertEquals(i, store.indexOfId(liveIds.get(i)));
+            assertEquals(live.get(i), store.get(i));
+        }
+
+        store.add("last");
+        assertEquals("last", store.get(store.size() - 1));
+        assertTrue(store.getId(store.size() - 1) > liveIds.get(liveIds.size() - 1));
+        assertTrue(store.removeById(liveIds.get(0)));
+        assertEquals("e10", store.get(0));
+    }
+
+    @Test
+    public void idsStayUniqueAfterClear(){
+        LogStore store = create(2);
+        store.add("a");
+        store.add("b");
+        long first = store.getId(0);
+        store.clear();
+        store.add("c");
+
+        assertEquals(-1, store.indexOfId(first));
+        assertTrue(store.getId(0) != first);
+        assertEquals("c", store.get(0));
+    }
+
+    @Test
+    public void matchesAListUnderRandomOperations(){
+        Random random = new Random(7);
+        LogStore store = create(16);
+        List<String> expected = new ArrayList<>();
+        List<Long> expectedIds = new ArrayList<>();
+        Set<Long> removedIds = new HashSet<>();
+        for (int step = 0; step < 20000; step++) {
+            int operation = random.nextInt(10);
+            if(operation < 5 || expected.isEmpty()){
+                String entry = "entry " + step;
+                store.add(entry);
+                expected.add(entry);
+                expectedIds.add(store.getId(store.size() - 1));
+            }
+            else if(operation < 8){
+                int index = random.nextInt(expected.size());
+                assertTrue(store.removeById(expectedIds.get(index)));
+                removedIds.add(expectedIds.remove(index));
+                expected.remove(index);
+            }
+            else{
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), store.remove(index));
+                removedIds.add(expectedIds.remove(index));
+            }
+            if(step % 1000 == 0){
+                assertConsistent(store, expected, expectedIds, removedIds);
+            }
+        }
+        assertConsistent(store, expected, expectedIds, removedIds);
+    }
+
+    /**
+     * Compare the store with the expected entries and IDs
+     *
+     * @param store to check
+     * @param expected entries in order
+     * @param expectedIds IDs of the expected entries
+     * @param removedIds IDs of the removed entries
+     */
+    private static void assertConsistent(LogStore store, List<String> expected, List<Long> expectedIds, Set<Long> removedIds){
+        assertEquals(expected.size(), store.size());
+        assertEquals(expected, new ArrayList<>(store));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), store.get(i));
+            assertEquals(expectedIds.get(i).longValue(), store.getId(i));
+            assertEquals(i, store.indexOfId(expectedIds.get(i)));
+        }
+        for (long id: removedIds) {
+            assertEquals(-1, store.indexOfId(id));
+        }
+    }
+
+    /**
+     * @param memoryCapacity number of recent entries kept in memory
+     * @return empty store closed after the test
+     */
+    private LogStore create(int memoryCapacity){
+        LogStore store = new LogStore(memoryCapacity);
+        stores.add(store);
+        return store;
+    }
+}
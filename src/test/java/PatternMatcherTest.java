@@ -0,0 +1,166 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PatternMatcherTest runs the keyword patterns of the PatternMatcher against
+ * java.util.regex and reports every text on which the two disagree. The
+ * PatternMatcher reports the match of a keyword that ends first, starting
+ * as early as possible, and the next match of the keyword starts after it.
+ * The reference spans follow the same rule, with java.util.regex deciding
+ * whether a span of the lowercased text matches, case insensitively and
+ * with the context of the span visible to \b, ^ and $
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class PatternMatcherTest {
+
+    private static final String[] PATTERNS = {
+            "re:sale", "re:s.le", "re:colou?r", "re:ab*c", "re:ab+", "re:a+", "re:aa", "re:(ab)+",
+            "re:a{3}", "re:a{2,}", "re:a{1,3}", "re:(ab|a){2,3}", "re:[0-9]{2,4}", "re:x{0,2}y",
+            "re:[a-c]+", "re:[^a-z ]+", "re:[^\\d\\s]{2}", "re:[A-Z][0-9]", "re:[-.a]+", "re:[\\w.]+@[\\w.]+",
+            "re:\\d+", "re:\\D\\d", "re:\\w+", "re:\\W", "re:\\s\\S", "re:\\bab\\b", "re:\\bb", "re:b\\b",
+            "re:\\Bb\\B", "re:^ab", "re:ab$", "re:^a.*b$", "re:(cheap|low) price", "re:a|b|ab", "re:(a|ab)(c|bcd)",
+            "re:\\$\\d+(\\.\\d\\d)?", "re:a.c", "re:(a*b)+c", "re:\u00e9\\w", "re:\\bprice drop\\b",
+            "re:[ab]*b", "re:a*b", "re:\\w*b", "re:.*b", "re:(ab|b)*b", "re:x?y", "re:(a|b)*ab", "re:[^ ]*b\\b", "re:\\S*drop",
+            "wc:price*", "wc:*drop", "wc:a*b", "wc:sale*off"};
+    private static final String[] INVALID = {"re:(ab", "re:ab)", "re:a{2,1}", "re:[b-a]", "re:a*", "re:\\1", "re:x?"};
+    private static final String[] TEXTS = {
+            "", "sale", "SALE sale Sale", "a sale, a sole, a sle", "color colour colouur", "ac abc abbc abbbbc",
+            "aaaaaaa", "abababab aba", "aaa aa a aaaa", "abcabc", "12 123 12345 1234567", "xxxy xy y xxy",
+            "A1 b2 C3 d 4", "mail me at john.doe@example.com or a@b.c", "$5 $10.99 $3.5 $", "a-b.c..d",
+            "ab ab-ab _ab ab_ abab", "b ab ba bab", "cheap price, low price, price drop, low  price",
+            "Price drop! prices dropped, price-drop", "abcd abc acd abbcd", "aabbc abc bbc",
+            "caf\u00e9 \u00e9te \u00e9t\u00ea", "  a\tb \nc  ", "drop airdrop dropped", "sale off sales off sale-off salesoff",
+            "bb", "abab", "dropdrop", "bbb abb"};
+
+    @Test
+    public void matchesAgreeWithJavaRegex(){
+        List<String> texts = new ArrayList<>(Arrays.asList(TEXTS));
+        Random random = new Random(42); //the same texts on every run
+        String alphabet = "aabbcc  xy01._-\u00e9\tAB$";
+        for (int i = 0; i < 500; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(60);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            texts.add(text.toString());
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (String keyword: PATTERNS) {
+            String error = PatternMatcher.validate(keyword);
+            if(error != null){
+                failures.add(keyword + ": " + error);
+                continue;
+            }
+            Pattern reference = Pattern.compile(toRegex(keyword), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE
+                    | Pattern.UNICODE_CHARACTER_CLASS | Pattern.DOTALL);
+            for (String original: texts) {
+                String text = original.toLowerCase(Locale.ROOT);
+                List<String> expected = referenceSpans(reference, text);
+                List<String> actual = patternSpans(keyword, text);
+                if(!expected.equals(actual)){
+                    failures.add(keyword + " on \"" + text + "\": expected " + expected + " got " + actual);
+                }
+            }
+        }
+        assertTrue(failures.size() + " mismatches, first: " + failures.subList(0, Math.min(10, failures.size())),
+                failures.isEmpty());
+    }
+
+    @Test
+    public void invalidPatternsAreRejected(){
+        for (String keyword: INVALID) {
+            assertNotNull(keyword, PatternMatcher.validate(keyword));
+        }
+    }
+
+    @Test
+    public void starIsLiteralWithoutPrefix(){
+        assertFalse(PatternMatcher.isPattern("5*"));
+        assertFalse(PatternMatcher.isPattern("c*-rated"));
+        assertTrue(PatternMatcher.isPattern(PatternMatcher.WILDCARD_PREFIX + "c*-rated"));
+        KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("5*"));
+        List<Integer> matches = new ArrayList<>();
+        MatchScanner scanner = new MatchScanner(matcher, (keywordIndex, index, window) -> matches.add(index));
+        scanner.feed("rated 5* by 55 users");
+        scanner.finish();
+        assertEquals(Collections.singletonList(6), matches);
+    }
+
+    /**
+     * @param keyword regex or wildcard with its prefix
+     * @return java.util.regex equivalent of the keyword
+     */
+    private static String toRegex(String keyword){
+        if(keyword.startsWith(PatternMatcher.REGEX_PREFIX)){
+            return keyword.substring(PatternMatcher.REGEX_PREFIX.length());
+        }
+        String[] parts = keyword.substring(PatternMatcher.WILDCARD_PREFIX.length()).split("\\*", -1);
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if(i > 0){
+                regex.append("\\S*");
+            }
+            if(!parts[i].isEmpty()){
+                regex.append(Pattern.quote(parts[i]));
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * @param keyword to match
+     * @param text lowercased text
+     * @return spans reported by the PatternMatcher
+     */
+    private static List<String> patternSpans(String keyword, String text){
+        List<String> spans = new ArrayList<>();
+        PatternMatcher.Search search = new PatternMatcher(Collections.singletonList(keyword))
+                .newSearch((keywordIndex, start, end) -> spans.add(start + "-" + end));
+        for (int i = 0; i < text.length(); i++) {
+            search.feed(text.charAt(i));
+        }
+        search.finish();
+        return spans;
+    }
+
+    /**
+     * @param pattern compiled by java.util.regex
+     * @param text lowercased text
+     * @return spans that end first and start earliest, without overlaps
+     */
+    private static List<String> referenceSpans(Pattern pattern, String text){
+        List<String> spans = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        matcher.useTransparentBounds(true); //\b, ^ and $ see the text around the span
+        matcher.useAnchoringBounds(false);
+        int nextStart = 0;
+        for (int end = 1; end <= text.length(); end++) {
+            for (int start = Math.max(nextStart, end - PatternMatcher.MAX_MATCH_LENGTH); start < end; start++) {
+                matcher.region(start, end);
+                if(matcher.matches()){
+                    spans.add(start + "-" + end);
+                    nextStart = end;
+                    break;
+                }
+            }
+        }
+        return spans;
+    }
+}
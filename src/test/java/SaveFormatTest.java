@@ -0,0 +1,202 @@
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SaveFormatTest writes save data in the binary format and reads it back,
+ * including files of the first format version and damaged files
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class SaveFormatTest {
+
+    private static final int MAGIC = 0x55535356; //"USSV"
+
+    private final HashMap<String, ArrayList<String>> keyMap = new HashMap<>();
+    private final List<String> logs = new ArrayList<>();
+    private final HashMap<String, Long> intervals = new HashMap<>();
+    private final HashMap<String, String> selectors = new HashMap<>();
+
+    @Test
+    public void dataSurvivesARoundTrip() throws IOException {
+        char[] characters = new char[70000];
+        Arrays.fill(characters, '\u00e9');
+        HashMap<String, List<String>> written = new HashMap<>();
+        written.put("http://a.com", Arrays.asList("comma, inside", "pipe|inside", "line\nbreak", "re:\\d+"));
+        written.put("http://b.com", Collections.emptyList());
+        List<String> writtenLogs = Arrays.asList("http://a.com on \"re:\\d+\" at 10:00:00/01.01", new String(characters));
+        HashMap<String, Long> writtenIntervals = new HashMap<>();
+        writtenIntervals.put("http://a.com", 45000L);
+        writtenIntervals.put("http://gone.com", 1000L); //not written, the URL is not monitored
+        HashMap<String, String> writtenSelectors = new HashMap<>();
+        writtenSelectors.put("http://b.com", "div.price");
+
+        long generation = read(write(17, written, writtenLogs, writtenIntervals, writtenSelectors));
+
+        assertEquals(17, generation);
+        assertEquals(written, new HashMap<String, List<String>>(keyMap));
+        assertEquals(writtenLogs, logs);
+        assertEquals(Collections.singletonMap("http://a.com", 45000L), intervals);
+        assertEquals(writtenSelectors, selectors);
+    }
+
+    @Test
+    public void version1FileIsRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = header(bytes, 1, 5);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOutput = new DataOutputStream(payload);
+        payloadOutput.writeUTF("http://a.com");
+        payloadOutput.writeInt(2);
+        payloadOutput.writeUTF("one");
+        payloadOutput.writeUTF("two");
+        record(output, 1, payload);
+        payload.reset();
+        payloadOutput.writeUTF("entry");
+        record(output, 2, payload);
+        payload.reset();
+        payloadOutput.writeUTF("http://a.com");
+        payloadOutput.writeLong(9000);
+        record(output, 3, payload);
+        payload.reset();
+        payloadOutput.writeUTF("http://a.com");
+        payloadOutput.writeUTF("#main");
+        record(output, 4, payload);
+        payload.reset();
+        record(output, 0, payload);
+
+        assertEquals(5, read(bytes.toByteArray()));
+        assertEquals(Arrays.asList("one", "two"), keyMap.get("http://a.com"));
+        assertEquals(Collections.singletonList("entry"), logs);
+        assertEquals(Long.valueOf(9000), intervals.get("http://a.com"));
+        assertEquals("#main", selectors.get("http://a.com"));
+    }
+
+    @Test
+    public void unknownRecordIsSkipped() throws IOException {
+        byte[] saved = write(3, Collections.<String, List<String>>emptyMap(), Collections.singletonList("entry"),
+                Collections.<String, Long>emptyMap(), Collections.<String, String>emptyMap());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(saved, 0, 24); //header
+        DataOutputStream output = new DataOutputStream(bytes);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(new byte[]{1, 2, 3});
+        record(output, 42, payload);
+        bytes.write(saved, 24, saved.length - 24);
+
+        assertEquals(3, read(bytes.toByteArray()));
+        assertEquals(Collections.singletonList("entry"), logs);
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        byte[] saved = write(3, Collections.singletonMap("http://a.com", Collections.singletonList("one")),
+                Collections.singletonList("entry"), Collections.<String, Long>emptyMap(), Collections.<String, String>emptyMap());
+        try{
+            read(Arrays.copyOf(saved, saved.length - 3));
+            fail("a save file without its end record was read");
+        }
+        catch (IOException e){
+            //expected
+        }
+    }
+
+    @Test
+    public void newerVersionIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        header(bytes, 99, 1);
+        try{
+            read(bytes.toByteArray());
+            fail("a save file of an unknown version was read");
+        }
+        catch (IOException e){
+            //expected
+        }
+    }
+
+    @Test
+    public void binaryFormatIsDetectedWithoutConsumingTheStream() throws IOException {
+        byte[] saved = write(3, Collections.<String, List<String>>emptyMap(), Collections.<String>emptyList(),
+                Collections.<String, Long>emptyMap(), Collections.<String, String>emptyMap());
+        BufferedInputStream binary = new BufferedInputStream(new ByteArrayInputStream(saved));
+        BufferedInputStream text = new BufferedInputStream(new ByteArrayInputStream(
+                "http://a.com|one\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(SaveFormat.isBinary(binary));
+        assertEquals(3, SaveFormat.read(binary, keyMap, logs, intervals, selectors));
+        assertFalse(SaveFormat.isBinary(text));
+        assertEquals('h', text.read());
+        assertFalse(SaveFormat.isBinary(new BufferedInputStream(new ByteArrayInputStream(new byte[2]))));
+    }
+
+    /**
+     * @return save data written by SaveFormat.write
+     * @throws IOException
+     */
+    private static byte[] write(long generation, Map<String, ? extends List<String>> keyMap, List<String> logs,
+                                Map<String, Long> intervals, Map<String, String> selectors) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SaveFormat.write(bytes, generation, keyMap, logs, intervals, selectors);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read save data into the maps of the test
+     *
+     * @param saved save data
+     * @return generation of the save data
+     * @throws IOException
+     */
+    private long read(byte[] saved) throws IOException {
+        return SaveFormat.read(new ByteArrayInputStream(saved), keyMap, logs, intervals, selectors);
+    }
+
+    /**
+     * Write the header of a save file by hand
+     *
+     * @param bytes to write to
+     * @param version of the format
+     * @param generation of the save file
+     * @return stream to write the records with
+     * @throws IOException
+     */
+    private static DataOutputStream header(ByteArrayOutputStream bytes, int version, long generation) throws IOException {
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(version);
+        output.writeLong(generation);
+        output.writeLong(0); //save time
+        return output;
+    }
+
+    /**
+     * Write a record by hand
+     *
+     * @param output to write to
+     * @param type of the record
+     * @param payload of the record
+     * @throws IOException
+     */
+    private static void record(DataOutputStream output, int type, ByteArrayOutputStream payload) throws IOException {
+        output.writeByte(type);
+        output.writeInt(payload.size());
+        payload.writeTo(output);
+    }
+}
@@ -0,0 +1,293 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SaveJournalTest replays journals written by the SaveJournal, including
+ * journals with a torn or garbled last record, against a small save file state
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class SaveJournalTest {
+
+    private static final int MAGIC = 0x55534a4c; //"USJL"
+    private static final long GENERATION = 42;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private SaveJournal journal;
+    private HashMap<String, ArrayList<String>> keyMap;
+    private List<String> logs;
+    private HashMap<String, Long> intervals;
+    private HashMap<String, String> selectors;
+
+    @Before
+    public void setUp() throws IOException {
+        path = folder.getRoot().toPath().resolve("save.journal");
+        journal = new SaveJournal();
+        journal.open(path, GENERATION, -1, 0);
+        resetState();
+    }
+
+    /**
+     * Restore the save file state the journal is replayed onto
+     */
+    private void resetState(){
+        keyMap = new HashMap<>();
+        keyMap.put("a", new ArrayList<>(Collections.singletonList("x")));
+        keyMap.put("b", new ArrayList<>());
+        logs = new ArrayList<>(Arrays.asList("l0", "l1", "l2", "l3"));
+        intervals = new HashMap<>();
+        intervals.put("b", 5000L);
+        selectors = new HashMap<>();
+        selectors.put("b", ".b");
+    }
+
+    @Test
+    public void replaysEveryOperation() throws IOException {
+        journal.record(SaveJournal.ADD_URL, "c");
+        journal.record(SaveJournal.ADD_KEYWORD, "c", "k1");
+        journal.record(SaveJournal.ADD_KEYWORD, "c", "k2");
+        journal.record(SaveJournal.DELETE_KEYWORD, "c", "k1");
+        journal.record(SaveJournal.ADD_KEYWORD, "missing", "k"); //ignored, the URL is gone
+        journal.record(SaveJournal.DELETE_URL, "b");
+        journal.record(SaveJournal.SET_INTERVAL, "a", "60000");
+        journal.record(SaveJournal.SET_SELECTOR, "a", "#main");
+        journal.record(SaveJournal.SET_SELECTOR, "c", ".c");
+        journal.record(SaveJournal.SET_SELECTOR, "c", ""); //an empty selector removes it
+        journal.record(SaveJournal.ADD_LOG, "l4");
+        journal.record(SaveJournal.REMOVE_LOG, "l0");
+        journal.record(SaveJournal.REMOVE_LOG_AT, "1");
+        journal.record(SaveJournal.REMOVE_LOG_AT, "7"); //past the end, ignored
+        journal.flush();
+
+        long[] replayed = replay(GENERATION);
+
+        assertArrayEquals(new long[]{Files.size(path), 14, SaveJournal.VERSION}, replayed);
+        assertEquals(Collections.singletonList("x"), keyMap.get("a"));
+        assertEquals(Collections.singletonList("k2"), keyMap.get("c"));
+        assertFalse(keyMap.containsKey("b"));
+        assertFalse(keyMap.containsKey("missing"));
+        assertEquals(Collections.singletonMap("a", 60000L), intervals);
+        assertEquals(Collections.singletonMap("a", "#main"), selectors);
+        assertEquals(Arrays.asList("l1", "l3", "l4"), logs);
+    }
+
+    @Test
+    public void removeLogAtUsesTheIndexAtTheTimeOfTheChange() throws IOException {
+        journal.record(SaveJournal.REMOVE_LOG_AT, "0");
+        journal.record(SaveJournal.REMOVE_LOG_AT, "0");
+        journal.record(SaveJournal.ADD_LOG, "l4");
+        journal.record(SaveJournal.REMOVE_LOG_AT, "1");
+        journal.flush();
+
+        replay(GENERATION);
+
+        assertEquals(Arrays.asList("l2", "l4"), logs);
+    }
+
+    @Test
+    public void clearLogsRemovesTheEarlierEntries() throws IOException {
+        journal.record(SaveJournal.ADD_LOG, "l4");
+        journal.record(SaveJournal.CLEAR_LOGS);
+        journal.record(SaveJournal.ADD_LOG, "l5");
+        journal.flush();
+
+        replay(GENERATION);
+
+        assertEquals(Collections.singletonList("l5"), logs);
+    }
+
+    @Test
+    public void journalOfAnotherGenerationIsIgnored() throws IOException {
+        journal.record(SaveJournal.ADD_URL, "c");
+        journal.record(SaveJournal.CLEAR_LOGS);
+        journal.flush();
+
+        assertNull(replay(GENERATION + 1));
+        assertFalse(keyMap.containsKey("c"));
+        assertEquals(4, logs.size());
+    }
+
+    @Test
+    public void missingJournalIsIgnored() throws IOException {
+        Files.delete(path);
+
+        assertNull(replay(GENERATION));
+    }
+
+    @Test
+    public void truncatedRecordIsDroppedAndOverwritten() throws IOException {
+        journal.record(SaveJournal.ADD_LOG, "l4");
+        journal.record(SaveJournal.ADD_LOG, "l5");
+        journal.flush();
+        long validLength = Files.size(path);
+        journal.record(SaveJournal.ADD_KEYWORD, "a", "torn");
+        journal.flush();
+        truncate(Files.size(path) - 2);
+
+        long[] replayed = replay(GENERATION);
+
+        assertArrayEquals(new long[]{validLength, 2, SaveJournal.VERSION}, replayed);
+        assertEquals(Arrays.asList("l0", "l1", "l2", "l3", "l4", "l5"), logs);
+        assertEquals(Collections.singletonList("x"), keyMap.get("a"));
+
+        journal.open(path, GENERATION, replayed[0], (int) replayed[1]);
+        journal.record(SaveJournal.ADD_LOG, "l6");
+        journal.flush();
+        resetState();
+
+        assertEquals(3, replay(GENERATION)[1]);
+        assertEquals(Arrays.asList("l0", "l1", "l2", "l3", "l4", "l5", "l6"), logs);
+    }
+
+    @Test
+    public void unparsableNumberEndsTheReplay() throws IOException {
+        journal.record(SaveJournal.ADD_LOG, "l4");
+        journal.record(SaveJournal.SET_INTERVAL, "a", "soon");
+        journal.record(SaveJournal.ADD_LOG, "l5");
+        journal.flush();
+
+        assertEquals(1, replay(GENERATION)[1]);
+        assertEquals(Arrays.asList("l0", "l1", "l2", "l3", "l4"), logs);
+        assertFalse(intervals.containsKey("a"));
+
+        journal.reset(GENERATION);
+        resetState();
+        journal.record(SaveJournal.REMOVE_LOG_AT, "last");
+        journal.flush();
+
+        assertEquals(0, replay(GENERATION)[1]);
+        assertEquals(4, logs.size());
+    }
+
+    @Test
+    public void garbledRecordEndsTheReplay() throws IOException {
+        journal.record(SaveJournal.ADD_LOG, "l4");
+        journal.flush();
+        long validLength = Files.size(path);
+        try (DataOutputStream output = append()) {
+            output.writeByte(SaveJournal.ADD_LOG);
+            output.writeInt(Integer.MAX_VALUE); //longer than the file
+            output.writeByte(SaveJournal.ADD_LOG);
+            output.writeInt(1);
+            output.writeByte('x');
+        }
+
+        assertArrayEquals(new long[]{validLength, 1, SaveJournal.VERSION}, replay(GENERATION));
+        assertEquals(5, logs.size());
+    }
+
+    @Test
+    public void unknownOperationEndsTheReplay() throws IOException {
+        journal.record(SaveJournal.ADD_LOG, "l4");
+        journal.flush();
+        long validLength = Files.size(path);
+        try (DataOutputStream output = append()) {
+            output.writeByte(99);
+            output.writeByte(SaveJournal.CLEAR_LOGS);
+        }
+
+        assertArrayEquals(new long[]{validLength, 1, SaveJournal.VERSION}, replay(GENERATION));
+        assertEquals(5, logs.size());
+    }
+
+    @Test
+    public void argumentsLongerThanWriteUtfAllowsAreKept() throws IOException {
+        char[] characters = new char[100000];
+        Arrays.fill(characters, '\u00e9');
+        String entry = new String(characters);
+        journal.record(SaveJournal.ADD_LOG, entry);
+        journal.flush();
+
+        replay(GENERATION);
+
+        assertEquals(entry, logs.get(4));
+    }
+
+    @Test
+    public void version1JournalIsReplayed() throws IOException {
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(path))) {
+            output.writeInt(MAGIC);
+            output.writeInt(1);
+            output.writeLong(GENERATION);
+            output.writeByte(SaveJournal.ADD_KEYWORD);
+            output.writeUTF("a");
+            output.writeUTF("y");
+            output.writeByte(SaveJournal.SET_INTERVAL);
+            output.writeUTF("a");
+            output.writeUTF("30000");
+        }
+
+        long[] replayed = replay(GENERATION);
+
+        assertArrayEquals(new long[]{Files.size(path), 2, 1}, replayed);
+        assertEquals(Arrays.asList("x", "y"), keyMap.get("a"));
+        assertEquals(Long.valueOf(30000), intervals.get("a"));
+    }
+
+    @Test
+    public void recordCountIncludesTheBufferedChanges() throws IOException {
+        journal.record(SaveJournal.ADD_LOG, "l4");
+        journal.flush();
+        journal.record(SaveJournal.ADD_LOG, "l5");
+
+        assertEquals(2, journal.getRecordCount());
+        assertTrue(journal.isOpenFor(path));
+        journal.discardPending();
+        assertEquals(1, journal.getRecordCount());
+    }
+
+    /**
+     * Replay the journal file onto the state of the test
+     *
+     * @param generation of the save file
+     * @return result of SaveJournal.replay
+     * @throws IOException
+     */
+    private long[] replay(long generation) throws IOException {
+        return SaveJournal.replay(path, generation, keyMap, logs, intervals, selectors);
+    }
+
+    /**
+     * @return stream appending raw bytes to the journal file
+     * @throws IOException
+     */
+    private DataOutputStream append() throws IOException {
+        OutputStream output = Files.newOutputStream(path, StandardOpenOption.APPEND);
+        return new DataOutputStream(output);
+    }
+
+    /**
+     * @param length to cut the journal file to
+     * @throws IOException
+     */
+    private void truncate(long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+}
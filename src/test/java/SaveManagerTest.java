@@ -0,0 +1,208 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SaveManagerTest saves and loads the data of a DataManager through the save
+ * file and its journal, starting from the old text format
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class SaveManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+    private final List<DataManager> dataManagers = new ArrayList<>();
+
+    @Before
+    public void setUp(){
+        path = folder.getRoot().toPath().resolve("urls.save");
+    }
+
+    @After
+    public void tearDown(){
+        for (DataManager dataManager: dataManagers) {
+            dataManager.closeNotifications();
+        }
+        assertEquals(Collections.<String>emptyList(), errors);
+    }
+
+    @Test
+    public void textSaveIsConvertedToBinary() throws IOException {
+        Files.write(path, ("http://a.com|one,two\n" +
+                "http://b.com|\n" +
+                "~http://a.com on \"one\" at 10:00:00/01.01\n").getBytes(StandardCharsets.UTF_8));
+
+        DataManager dataManager = load();
+        assertEquals(Arrays.asList("one", "two"), dataManager.getKeywords("http://a.com"));
+        assertEquals(Collections.<String>emptyList(), dataManager.getKeywords("http://b.com"));
+        assertEquals(1, dataManager.getLogCount());
+        dataManager.save();
+
+        assertTrue(isBinary());
+        DataManager reloaded = load();
+        assertEquals(dataManager.getUrlKeyMap(), reloaded.getUrlKeyMap());
+        assertEquals("http://a.com on \"one\" at 10:00:00/01.01", reloaded.getLogEntry(0));
+    }
+
+    @Test
+    public void changesAreAppendedToTheJournal() throws IOException {
+        DataManager dataManager = create();
+        dataManager.save();
+        byte[] saved = Files.readAllBytes(path);
+
+        dataManager.addUrl("http://a.com");
+        dataManager.addKeyword("http://a.com", "one");
+        dataManager.addUrl("http://b.com");
+        dataManager.setSelector("http://b.com", "#price");
+        dataManager.addLogEntry("first");
+        dataManager.addLogEntry("second");
+        dataManager.addLogEntry("third");
+        dataManager.removeLogEntry(dataManager.getLogs().getId(1));
+        dataManager.save();
+
+        assertArrayEquals(saved, Files.readAllBytes(path));
+        DataManager reloaded = load();
+        assertEquals(dataManager.getUrlKeyMap(), reloaded.getUrlKeyMap());
+        assertEquals("#price", reloaded.getSelector("http://b.com"));
+        assertEquals(Arrays.asList("first", "third"), new ArrayList<>(reloaded.getLogs()));
+
+        reloaded.deleteUrl("http://b.com");
+        reloaded.save();
+        assertEquals(Collections.singleton("http://a.com"), load().getUrls());
+    }
+
+    @Test
+    public void journalOfAnOlderSaveIsIgnored() throws IOException {
+        DataManager dataManager = create();
+        dataManager.save();
+        dataManager.addUrl("http://a.com");
+        dataManager.save();
+        Path journal = dataManager.getSaveManager().getJournalPath();
+        byte[] staleJournal = Files.readAllBytes(journal);
+
+        Properties properties = new Properties();
+        properties.setProperty("journal", "false");
+        DataManager withoutJournal = create(new Settings(properties));
+        withoutJournal.load();
+        withoutJournal.deleteUrl("http://a.com");
+        withoutJournal.addUrl("http://b.com");
+        withoutJournal.save(); //a new generation of the save file, the journal is left as it was
+
+        assertArrayEquals(staleJournal, Files.readAllBytes(journal));
+        assertEquals(Collections.singleton("http://b.com"), load().getUrls());
+    }
+
+    @Test
+    public void version1JournalIsReplayedAndReplacedOnSave() throws IOException {
+        DataManager dataManager = create();
+        dataManager.addUrl("http://a.com");
+        dataManager.save();
+        long generation;
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            generation = SaveFormat.read(input, new HashMap<>(), new ArrayList<>(), new HashMap<>(), new HashMap<>());
+        }
+        Path journal = dataManager.getSaveManager().getJournalPath();
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(journal))) {
+            output.writeInt(0x55534a4c); //"USJL"
+            output.writeInt(1);
+            output.writeLong(generation);
+            output.writeByte(SaveJournal.ADD_KEYWORD);
+            output.writeUTF("http://a.com");
+            output.writeUTF("one");
+        }
+        byte[] saved = Files.readAllBytes(path);
+
+        DataManager reloaded = load();
+        assertEquals(Collections.singletonList("one"), reloaded.getKeywords("http://a.com"));
+        reloaded.addLogEntry("entry");
+        reloaded.save();
+
+        assertFalse(Arrays.equals(saved, Files.readAllBytes(path)));
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(journal))) {
+            input.readInt();
+            assertEquals(SaveJournal.VERSION, input.readInt());
+        }
+        DataManager loaded = load();
+        assertEquals(Collections.singletonList("one"), loaded.getKeywords("http://a.com"));
+        assertEquals(Collections.singletonList("entry"), new ArrayList<>(loaded.getLogs()));
+    }
+
+    /**
+     * @return DataManager with no data that saves to the path of the test
+     */
+    private DataManager create(){
+        return create(new Settings());
+    }
+
+    /**
+     * @param settings of the DataManager
+     * @return DataManager with no data that saves to the path of the test
+     */
+    private DataManager create(Settings settings){
+        DataManager dataManager = new DataManager(settings);
+        dataManager.addSink(new MatchSink() {
+            @Override
+            public void matchFound(String url, String keyword) {}
+
+            @Override
+            public void error(String message) {
+                errors.add(message);
+            }
+        });
+        dataManager.getSaveManager().setPathToSave(path);
+        dataManagers.add(dataManager);
+        if(!Files.exists(path)){
+            dataManager.getSaveManager().clearPathToSave(); //nothing to load yet
+            dataManager.load();
+            dataManager.getSaveManager().setPathToSave(path);
+        }
+        return dataManager;
+    }
+
+    /**
+     * @return DataManager loaded from the save file of the test
+     */
+    private DataManager load(){
+        DataManager dataManager = create();
+        dataManager.load();
+        return dataManager;
+    }
+
+    /**
+     * @return true if the save file has the binary format
+     * @throws IOException
+     */
+    private boolean isBinary() throws IOException {
+        try (BufferedInputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            return SaveFormat.isBinary(input);
+        }
+    }
+}
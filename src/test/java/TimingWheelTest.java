@@ -0,0 +1,192 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TimingWheelTest drives a TimingWheel with a manual clock and a tick of one
+ * millisecond through the turns of all four levels, checking that every
+ * timeout fires on the tick of its deadline and not on the one before
+ *
+ * @version 0.4
+ * @author Albert Shakirzianov
+ */
+public class TimingWheelTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_TICKS = (1L << 32) - 1;
+
+    private long now;
+    private final TimingWheel wheel = new TimingWheel(1, () -> now);
+    private final List<Runnable> expired = new ArrayList<>();
+
+    @Test
+    public void timeoutsCascadeAcrossEveryLevel(){
+        long[] delays = {1, 255, 256, 257, 511, 512, 65535, 65536, 65537, 65536 + 300,
+                (1L << 24) - 1, 1L << 24, (1L << 24) + 1, (1L << 24) + 65536 * 3 + 7, (1L << 25) + 1};
+        List<Fired> timeouts = new ArrayList<>();
+        for (long delay: delays) {
+            timeouts.add(schedule(delay));
+        }
+        assertEquals(delays.length, wheel.getPending());
+
+        for (int i = 0; i < delays.length; i++) {
+            advanceTo(delays[i] - 1);
+            assertFalse("fired before " + delays[i], timeouts.get(i).fired);
+            advanceTo(delays[i]);
+            assertTrue("not fired at " + delays[i], timeouts.get(i).fired);
+            assertEquals(delays.length - i - 1, wheel.getPending());
+        }
+    }
+
+    @Test
+    public void timeoutsScheduledInTheMiddleOfATurnCascade(){
+        advanceTo(200);
+        Fired nextTurn = schedule(100); //crosses the turn of level 0 at tick 256
+        Fired sameSlotNextTurn = schedule(65500); //the level 1 bucket of the current tick, one turn later
+        advanceTo(70000);
+        Fired topLevel = schedule((1L << 24) + 5);
+
+        assertTrue(nextTurn.fired);
+        assertTrue(sameSlotNextTurn.fired);
+        advanceTo(70000 + (1L << 24) + 4);
+        assertFalse(topLevel.fired);
+        advanceTo(70000 + (1L << 24) + 5);
+        assertTrue(topLevel.fired);
+    }
+
+    @Test
+    public void cancelledBeforeTheCascadeNeverFires(){
+        Fired cancelled = schedule(1000);
+        Fired kept = schedule(1000);
+        advanceTo(10);
+        wheel.cancel(cancelled.timeout);
+        assertEquals(1, wheel.getPending());
+
+        advanceTo(2000);
+
+        assertFalse(cancelled.fired);
+        assertTrue(kept.fired);
+        assertEquals(0, wheel.getPending());
+    }
+
+    @Test
+    public void cancelledAfterTheCascadeNeverFires(){
+        Fired cancelled = schedule(70000);
+        Fired kept = schedule(70000);
+        advanceTo(69900); //both cascaded from level 2 to level 1 at 65536, then to level 0 at 69888
+        wheel.cancel(cancelled.timeout);
+        wheel.cancel(cancelled.timeout);
+        assertEquals(1, wheel.getPending());
+
+        advanceTo(80000);
+
+        assertFalse(cancelled.fired);
+        assertTrue(kept.fired);
+        wheel.cancel(kept.timeout); //fired already, nothing to cancel
+        assertEquals(0, wheel.getPending());
+    }
+
+    @Test
+    public void rescheduleMovesTheDeadline(){
+        Fired later = schedule(300);
+        Fired earlier = schedule(70000);
+        wheel.reschedule(later.timeout, 70000);
+        wheel.reschedule(earlier.timeout, 300);
+
+        advanceTo(300);
+        assertTrue(earlier.fired);
+        assertFalse(later.fired);
+        advanceTo(70000);
+        assertTrue(later.fired);
+
+        later.fired = false;
+        wheel.reschedule(later.timeout, 5); //a fired timeout is scheduled again
+        advanceTo(70005);
+        assertTrue(later.fired);
+        assertEquals(0, wheel.getPending());
+    }
+
+    @Test
+    public void delaysBeyondTheTopLevelAreClamped(){
+        Fired beyond = schedule(MAX_TICKS + 1000);
+        Fired huge = schedule(Long.MAX_VALUE);
+        advanceTo(5);
+        Fired late = schedule(TimeUnit.DAYS.toMillis(365 * 100));
+
+        assertEquals(MAX_TICKS, beyond.timeout.getDeadline());
+        assertEquals(MAX_TICKS, huge.timeout.getDeadline());
+        assertEquals(5 + MAX_TICKS, late.timeout.getDeadline());
+        advanceTo(1L << 26); //walking to the deadlines takes too long, the top level must hold them
+        assertFalse(beyond.fired);
+        assertFalse(huge.fired);
+        assertFalse(late.fired);
+        assertEquals(3, wheel.getPending());
+    }
+
+    @Test
+    public void zeroAndNegativeDelaysFireOnTheNextTick(){
+        advanceTo(3);
+        now += TICK / 2; //between two ticks
+        Fired zero = schedule(0);
+        Fired negative = schedule(-10);
+        wheel.runDueTasks(expired);
+        assertFalse(zero.fired);
+
+        advanceTo(4);
+
+        assertTrue(zero.fired);
+        assertTrue(negative.fired);
+    }
+
+    @Test
+    public void timerThreadRunsTheTasks() throws InterruptedException {
+        TimingWheel timer = new TimingWheel(1, "test-timer");
+        try{
+            CountDownLatch latch = new CountDownLatch(2);
+            timer.schedule(latch::countDown, 5);
+            timer.schedule(latch::countDown, 300); //cascades from level 1
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(0, timer.getPending());
+        }
+        finally {
+            timer.shutdown();
+        }
+    }
+
+    /**
+     * Schedule a timeout that records whether it has fired
+     *
+     * @param delay in milliseconds
+     * @return record of the timeout
+     */
+    private Fired schedule(long delay){
+        Fired fired = new Fired();
+        fired.timeout = wheel.schedule(() -> fired.fired = true, delay);
+        return fired;
+    }
+
+    /**
+     * Move the clock to the start of a tick and run the due timeouts
+     *
+     * @param tick to move to
+     */
+    private void advanceTo(long tick){
+        now = tick * TICK;
+        wheel.runDueTasks(expired);
+    }
+
+    /**
+     * A scheduled timeout and whether it has fired
+     */
+    private static class Fired {
+        private TimingWheel.Timeout timeout;
+        private boolean fired;
+    }
+}